@@ -1,13 +1,19 @@
 package com.example.springrestful.config;
 
+import com.example.springrestful.security.PooledJavaMailSender;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.JavaMailSenderImpl;
 
 import java.util.Properties;
 
+/**
+ * Mail sender backed by a pool of authenticated SMTP connections, see {@link PooledJavaMailSender}.
+ * The pool should be at least as large as {@code application.email.dispatch.workers}, otherwise
+ * workers wait for a connection.
+ */
 @Configuration
 public class MailConfig {
 
@@ -23,9 +29,34 @@ public class MailConfig {
     @Value("${spring.mail.password}")
     private String mailPassword;
 
+    @Value("${spring.mail.properties.mail.smtp.connectiontimeout:5000}")
+    private int connectionTimeoutMs;
+
+    @Value("${spring.mail.properties.mail.smtp.timeout:5000}")
+    private int readTimeoutMs;
+
+    @Value("${spring.mail.properties.mail.smtp.writetimeout:5000}")
+    private int writeTimeoutMs;
+
+    @Value("${application.email.smtp.pool-size}")
+    private int poolSize;
+
+    @Value("${application.email.smtp.max-messages-per-connection}")
+    private int maxMessagesPerConnection;
+
+    @Value("${application.email.smtp.max-idle-ms}")
+    private long maxIdleMs;
+
+    @Value("${application.email.smtp.validate-after-idle-ms}")
+    private long validateAfterIdleMs;
+
+    @Value("${application.email.smtp.borrow-timeout-ms}")
+    private long borrowTimeoutMs;
+
     @Bean
-    public JavaMailSender javaMailSender() {
-        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+    public JavaMailSender javaMailSender(MeterRegistry meterRegistry) {
+        PooledJavaMailSender mailSender = new PooledJavaMailSender(poolSize, maxMessagesPerConnection,
+                maxIdleMs, validateAfterIdleMs, borrowTimeoutMs, meterRegistry);
         mailSender.setHost(mailHost);
         mailSender.setPort(mailPort);
         mailSender.setUsername(mailUsername);
@@ -35,8 +66,10 @@ public class MailConfig {
         props.put("mail.transport.protocol", "smtp");
         props.put("mail.smtp.auth", "true");
         props.put("mail.smtp.starttls.enable", "true");
-        props.put("mail.debug", "true");
+        props.put("mail.smtp.connectiontimeout", String.valueOf(connectionTimeoutMs));
+        props.put("mail.smtp.timeout", String.valueOf(readTimeoutMs));
+        props.put("mail.smtp.writetimeout", String.valueOf(writeTimeoutMs));
 
         return mailSender;
     }
-}
\ No newline at end of file
+}
@@ -1,17 +1,70 @@
 package com.example.springrestful.config;
 
+import com.example.springrestful.util.RedisTimeoutBudget;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Redis connections.
+ * <p>
+ * Three Lettuce connection factories are exposed:
+ * <ul>
+ *     <li>the primary one, shared by everything else, multiplexes non-blocking commands over a
+ *     single native connection;</li>
+ *     <li>the auth one, behind {@code authRedisTemplate}, always reads from the primary node, since
+ *     a revocation or generation change must be visible to the very next request. It only opens a
+ *     connection when {@code read-from} sends reads elsewhere; otherwise the template shares the
+ *     primary factory;</li>
+ *     <li>the queue one, behind {@link StringRedisTemplate}, is used by the email queues so that
+ *     queue traffic and blocking reads never sit in front of auth lookups on the same socket.</li>
+ * </ul>
+ * When pooling is enabled, blocking commands and transactions on either factory borrow a
+ * dedicated connection from a pool instead of opening a new one. Pub/sub subscriptions always get
+ * their own connection from the listener container. All factories share one set of Lettuce
+ * {@link ClientResources} (event loops, timers, DNS), so each does not spin up its own threads.
+ * <p>
+ * {@code spring.data.redis.mode} selects a standalone server, a Sentinel-managed primary or a
+ * Cluster. With {@code read-from} set to a replica policy, plain reads outside auth may be served
+ * by replicas while writes and scripts always go to the primary. Keys that are used together carry a common
+ * hash tag (see {@link com.example.springrestful.util.RedisKeys}) so they stay in one slot.
+ */
 @Configuration
 public class RedisConfig {
 
+    // standalone, sentinel or cluster
+    @Value("${spring.data.redis.mode:standalone}")
+    private String mode;
+
     @Value("${spring.data.redis.host}")
     private String redisHost;
 
@@ -24,17 +77,131 @@ public class RedisConfig {
     @Value("${spring.data.redis.password}")
     private String redisPassword;
 
+    @Value("${spring.data.redis.sentinel.master:}")
+    private String sentinelMaster;
+
+    @Value("${spring.data.redis.sentinel.nodes:}")
+    private String[] sentinelNodes;
+
+    @Value("${spring.data.redis.sentinel.password:}")
+    private String sentinelPassword;
+
+    @Value("${spring.data.redis.cluster.nodes:}")
+    private String[] clusterNodes;
+
+    @Value("${spring.data.redis.cluster.max-redirects:3}")
+    private int clusterMaxRedirects;
+
+    @Value("${spring.data.redis.cluster.topology-refresh-period:30s}")
+    private Duration clusterTopologyRefreshPeriod;
+
+    // Lettuce ReadFrom name: upstream, upstreamPreferred, replica, replicaPreferred, nearest or any
+    @Value("${spring.data.redis.read-from:upstream}")
+    private String readFrom;
+
+    @Value("${spring.data.redis.ssl.enabled:false}")
+    private boolean sslEnabled;
+
+    @Value("${spring.data.redis.timeout:2s}")
+    private Duration commandTimeout;
+
+    @Value("${spring.data.redis.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${spring.data.redis.lettuce.shutdown-timeout:100ms}")
+    private Duration shutdownTimeout;
+
+    @Value("${spring.data.redis.lettuce.pool.enabled:false}")
+    private boolean poolEnabled;
+
+    @Value("${spring.data.redis.lettuce.pool.max-active:8}")
+    private int poolMaxActive;
+
+    @Value("${spring.data.redis.lettuce.pool.max-idle:8}")
+    private int poolMaxIdle;
+
+    @Value("${spring.data.redis.lettuce.pool.min-idle:0}")
+    private int poolMinIdle;
+
+    @Value("${spring.data.redis.lettuce.pool.max-wait:1s}")
+    private Duration poolMaxWait;
+
+    // Commands buffered before an explicit flush inside executePipelined; 1 flushes after every command
+    @Value("${spring.data.redis.lettuce.pipelining.flush-threshold:1}")
+    private int pipeliningFlushThreshold;
+
+    /**
+     * Event loops and timers shared by every Lettuce client in this application.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ClientResources redisClientResources() {
+        return DefaultClientResources.create();
+    }
+
+    /**
+     * Socket, timeout and disconnect behaviour shared by every Lettuce client in this application.
+     */
     @Bean
+    public ClientOptions redisClientOptions() {
+        SocketOptions socketOptions = SocketOptions.builder().connectTimeout(connectTimeout).keepAlive(true).build();
+        // Commands honour the calling thread's RedisTimeoutBudget, if any, and commandTimeout otherwise
+        TimeoutOptions timeoutOptions = TimeoutOptions.builder()
+                .timeoutSource(RedisTimeoutBudget.timeoutSource(commandTimeout))
+                .build();
+        // Fail fast while disconnected instead of queueing commands behind the outage
+        ClientOptions.DisconnectedBehavior disconnectedBehavior = ClientOptions.DisconnectedBehavior.REJECT_COMMANDS;
+
+        return "cluster".equals(mode)
+                ? ClusterClientOptions.builder()
+                        .socketOptions(socketOptions)
+                        .timeoutOptions(timeoutOptions)
+                        .disconnectedBehavior(disconnectedBehavior)
+                        // Follow slot migrations and failovers without waiting for a MOVED storm
+                        .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                                .enablePeriodicRefresh(clusterTopologyRefreshPeriod)
+                                .enableAllAdaptiveRefreshTriggers()
+                                .build())
+                        .build()
+                : ClientOptions.builder()
+                        .socketOptions(socketOptions)
+                        .timeoutOptions(timeoutOptions)
+                        .disconnectedBehavior(disconnectedBehavior)
+                        .build();
+    }
+
+    @Bean
+    @Primary
     public RedisConnectionFactory redisConnectionFactory() {
-        // Include username and password in the configuration
-        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(redisHost, redisPort);
-        config.setUsername(redisUsername);
-        config.setPassword(redisPassword);
-        return new LettuceConnectionFactory(config);
+        return createConnectionFactory();
     }
 
     @Bean
+    public LettuceConnectionFactory queueRedisConnectionFactory() {
+        return createConnectionFactory();
+    }
+
+    @Bean
+    public LettuceConnectionFactory authRedisConnectionFactory() {
+        return createConnectionFactory(false);
+    }
+
+    @Bean
+    @Primary
     public RedisTemplate<String, String> redisTemplate(RedisConnectionFactory connectionFactory) {
+        return stringTemplate(connectionFactory);
+    }
+
+    /**
+     * Template for authentication state, whose reads are never served by replicas.
+     */
+    @Bean
+    public RedisTemplate<String, String> authRedisTemplate(
+            RedisConnectionFactory connectionFactory,
+            @Qualifier("authRedisConnectionFactory") LettuceConnectionFactory authConnectionFactory) {
+        return stringTemplate(readsFromReplicas() ? authConnectionFactory : connectionFactory);
+    }
+
+    private RedisTemplate<String, String> stringTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, String> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
@@ -48,4 +215,96 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
+
+    /**
+     * Template for the email queues, on its own connection factory.
+     */
+    @Bean
+    public StringRedisTemplate queueRedisTemplate(LettuceConnectionFactory queueRedisConnectionFactory) {
+        return new StringRedisTemplate(queueRedisConnectionFactory);
+    }
+
+    /**
+     * Pub/sub for the Redis token store; the in-memory store runs without it.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "jwt.token-store.type", havingValue = "redis", matchIfMissing = true)
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    private LettuceConnectionFactory createConnectionFactory() {
+        return createConnectionFactory(true);
+    }
+
+    private LettuceConnectionFactory createConnectionFactory(boolean replicaReads) {
+        LettuceConnectionFactory factory =
+                new LettuceConnectionFactory(serverConfiguration(), clientConfiguration(replicaReads));
+        factory.setPipeliningFlushPolicy(pipeliningFlushThreshold > 1
+                ? LettuceConnection.PipeliningFlushPolicy.buffered(pipeliningFlushThreshold)
+                : LettuceConnection.PipeliningFlushPolicy.flushEachCommand());
+        return factory;
+    }
+
+    private RedisConfiguration serverConfiguration() {
+        switch (mode) {
+            case "sentinel" -> {
+                RedisSentinelConfiguration config =
+                        new RedisSentinelConfiguration(sentinelMaster, new HashSet<>(Arrays.asList(sentinelNodes)));
+                config.setUsername(redisUsername);
+                config.setPassword(redisPassword);
+                if (!sentinelPassword.isEmpty()) {
+                    config.setSentinelPassword(sentinelPassword);
+                }
+                return config;
+            }
+            case "cluster" -> {
+                RedisClusterConfiguration config = new RedisClusterConfiguration(Arrays.asList(clusterNodes));
+                config.setMaxRedirects(clusterMaxRedirects);
+                config.setUsername(redisUsername);
+                config.setPassword(redisPassword);
+                return config;
+            }
+            case "standalone" -> {
+                // Include username and password in the configuration
+                RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(redisHost, redisPort);
+                config.setUsername(redisUsername);
+                config.setPassword(redisPassword);
+                return config;
+            }
+            default -> throw new IllegalStateException("Unsupported Redis mode: " + mode);
+        }
+    }
+
+    private boolean readsFromReplicas() {
+        return !"upstream".equalsIgnoreCase(readFrom);
+    }
+
+    private LettuceClientConfiguration clientConfiguration(boolean replicaReads) {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder;
+        if (poolEnabled) {
+            GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
+            poolConfig.setMaxTotal(poolMaxActive);
+            poolConfig.setMaxIdle(poolMaxIdle);
+            poolConfig.setMinIdle(poolMinIdle);
+            poolConfig.setMaxWait(poolMaxWait);
+            builder = LettucePoolingClientConfiguration.builder().poolConfig(poolConfig);
+        } else {
+            builder = LettuceClientConfiguration.builder();
+        }
+
+        builder.clientResources(redisClientResources())
+                .clientOptions(redisClientOptions())
+                .commandTimeout(commandTimeout)
+                .shutdownTimeout(shutdownTimeout);
+        if (replicaReads && readsFromReplicas()) {
+            builder.readFrom(ReadFrom.valueOf(readFrom));
+        }
+        if (sslEnabled) {
+            builder.useSsl();
+        }
+        return builder.build();
+    }
 }
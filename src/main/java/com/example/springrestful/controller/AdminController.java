@@ -1,4 +1,25 @@
 package com.example.springrestful.controller;
 
+import com.example.springrestful.dto.DeadLetterResponse;
+import com.example.springrestful.security.EmailQueueService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/admin")
+@RequiredArgsConstructor
 public class AdminController {
+    private final EmailQueueService emailQueueService;
+
+    @GetMapping("/email-queues/{queue}/dead-letters")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<DeadLetterResponse>> getDeadLetters(
+            @PathVariable String queue,
+            @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(emailQueueService.getDeadLetters(queue, Math.min(Math.max(limit, 1), 500)));
+    }
 }
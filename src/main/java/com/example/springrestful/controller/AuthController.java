@@ -121,4 +121,22 @@ public class AuthController {
                     .build());
         }
     }
-}
\ No newline at end of file
+
+    @GetMapping("/sessions")
+    public ResponseEntity<ActiveSessionsResponse> getActiveSessions() {
+        try {
+            return ResponseEntity.ok(authService.getActiveSessions());
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(403).build();
+        }
+    }
+
+    @GetMapping("/sessions/count")
+    public ResponseEntity<Long> countActiveSessions() {
+        try {
+            return ResponseEntity.ok(authService.countActiveSessions());
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(403).build();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.springrestful.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActiveSessionsResponse {
+
+    private long count;
+    private List<SessionResponse> sessions;
+}
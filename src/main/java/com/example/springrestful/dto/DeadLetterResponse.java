@@ -0,0 +1,26 @@
+package com.example.springrestful.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Dead-lettered email without its verification code or body.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeadLetterResponse {
+
+    private String queue;
+    private String recipient;
+    private int attempts;
+    private String lastError;
+    private LocalDateTime enqueuedAt;
+    private LocalDateTime failedAt;
+    private boolean readable;
+}
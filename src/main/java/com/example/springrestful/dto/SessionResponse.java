@@ -0,0 +1,18 @@
+package com.example.springrestful.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SessionResponse {
+
+    private String sessionId;
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,55 @@
+package com.example.springrestful.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * Email written in the same transaction as the change that triggers it and published to its
+ * Redis queue by the outbox relay once that transaction committed.
+ */
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Table(name = "email_outbox", indexes = @Index(name = "idx_email_outbox_status_id", columnList = "status, id"))
+public class EmailOutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Name of the email queue the payload is published to
+    @Column(nullable = false)
+    private String queue;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+    private String payload;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime publishedAt;
+
+    public enum Status {
+        PENDING,
+        PUBLISHED
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.springrestful.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown when the password hashing pool is saturated, so the caller can be told to retry
+ * instead of queueing behind other hashing work.
+ */
+@Getter
+public class PasswordHashingBusyException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public PasswordHashingBusyException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -3,8 +3,13 @@ package com.example.springrestful.mapper;
 import com.example.springrestful.dto.UserRegistrationRequest;
 import com.example.springrestful.dto.UserResponse;
 import com.example.springrestful.entity.User;
+import com.example.springrestful.enums.UserRole;
+import com.example.springrestful.service.impl.CustomUserDetailsImpl;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import java.util.stream.Collectors;
+
 @Component
 public class AuthMapper {
     public static User toEntity(UserRegistrationRequest request) {
@@ -32,4 +37,19 @@ public class AuthMapper {
                 .twoFactorAuthEnabled(user.isTwoFactorAuthEnabled())
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Maps a principal built from token claims; fields not carried in the token are left empty.
+     */
+    public static UserResponse toResponse(CustomUserDetailsImpl userDetails) {
+        return UserResponse.builder()
+                .id(userDetails.getId())
+                .email(userDetails.getEmail())
+                .roles(userDetails.getAuthorities().stream()
+                        .map(GrantedAuthority::getAuthority)
+                        .map(authority -> UserRole.valueOf(authority.replaceFirst("^ROLE_", "")))
+                        .collect(Collectors.toSet()))
+                .emailVerified(userDetails.isEmailVerified())
+                .build();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.springrestful.repository;
+
+import com.example.springrestful.entity.EmailOutboxMessage;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    /**
+     * Oldest messages in a status, locked for the caller's transaction. Rows locked by another
+     * node's relay are skipped rather than waited for (lock timeout -2 is SKIP LOCKED).
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT m FROM EmailOutboxMessage m WHERE m.status = :status ORDER BY m.id")
+    List<EmailOutboxMessage> lockOldestByStatus(@Param("status") EmailOutboxMessage.Status status, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM EmailOutboxMessage m WHERE m.status = :status AND m.publishedAt < :before")
+    int deleteByStatusAndPublishedAtBefore(@Param("status") EmailOutboxMessage.Status status,
+                                           @Param("before") LocalDateTime before);
+}
@@ -0,0 +1,15 @@
+package com.example.springrestful.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One live session of a user: a refresh token that has not expired, been rotated or been revoked.
+ */
+@Getter
+@AllArgsConstructor
+public final class ActiveSession {
+
+    private final String tokenId;
+    private final long expiresAt;
+}
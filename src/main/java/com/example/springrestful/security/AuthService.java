@@ -1,10 +1,13 @@
 package com.example.springrestful.security;
 
+import com.example.springrestful.dto.ActiveSessionsResponse;
 import com.example.springrestful.dto.AuthResponse;
 import com.example.springrestful.dto.LoginRequest;
+import com.example.springrestful.dto.SessionResponse;
 import com.example.springrestful.dto.UserRegistrationRequest;
 import com.example.springrestful.entity.User;
 import com.example.springrestful.enums.UserRole;
+import com.example.springrestful.exception.PasswordHashingBusyException;
 import com.example.springrestful.exception.UserAuthenticationException;
 import com.example.springrestful.exception.VerificationResendLimitException;
 import com.example.springrestful.mapper.AuthMapper;
@@ -12,14 +15,12 @@ import com.example.springrestful.repository.AuthRepository;
 import com.example.springrestful.repository.OrganizationRepository;
 import com.example.springrestful.service.impl.CustomUserDetailsImpl;
 import com.example.springrestful.util.JwtUtil;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -29,10 +30,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.nio.file.AccessDeniedException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor
 @Service
@@ -56,13 +60,8 @@ public class AuthService {
     private final OrganizationRepository organizationRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
-    private final AuthenticationManager authenticationManager;
     private final EmailService emailService;
-    private final RedisTemplate<String, String> redisTemplate;
-
-    private static final String VERIFICATION_CODE_PREFIX = "verification:";
-    private static final String VERIFICATION_ATTEMPTS_PREFIX = "verification_attempts:";
-    private static final String PASSWORD_RESET_TOKEN_PREFIX = "password_reset:";
+    private final TokenStore tokenStore;
 
     /**
      * Get the current login user id
@@ -102,6 +101,38 @@ public class AuthService {
                 .build();
     }
 
+    /**
+     * Lists the refresh sessions of the current user that have not expired yet. Expired sessions
+     * are never returned, even before they are pruned from the index.
+     */
+    public ActiveSessionsResponse getActiveSessions() throws AccessDeniedException {
+        List<SessionResponse> sessions = jwtUtil.listActiveSessions(getCurrentUsername()).stream()
+                .map(session -> SessionResponse.builder()
+                        .sessionId(session.getTokenId())
+                        .expiresAt(LocalDateTime.ofInstant(
+                                Instant.ofEpochMilli(session.getExpiresAt()), ZoneId.systemDefault()))
+                        .build())
+                .toList();
+
+        return ActiveSessionsResponse.builder()
+                .count(sessions.size())
+                .sessions(sessions)
+                .build();
+    }
+
+    public long countActiveSessions() throws AccessDeniedException {
+        return jwtUtil.countActiveSessions(getCurrentUsername());
+    }
+
+    private String getCurrentUsername() throws AccessDeniedException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || !(authentication.getPrincipal() instanceof UserDetails)) {
+            throw new AccessDeniedException("User not authenticated");
+        }
+        return authentication.getName();
+    }
+
     /**
      * Handles user registration process with email verification.
      *
@@ -150,13 +181,12 @@ public class AuthService {
             String plainVerificationCode = emailService.generateVerificationCode();
             String hashedVerificationCode = emailService.hashVerificationCode(plainVerificationCode);
 
-            // Store verification code in Redis
-            String verificationKey = VERIFICATION_CODE_PREFIX + request.getEmail();
-            redisTemplate.opsForValue().set(
-                    verificationKey,
+            // Store verification code
+            tokenStore.saveCode(
+                    TokenStore.CodePurpose.EMAIL_VERIFICATION,
+                    request.getEmail(),
                     hashedVerificationCode,
-                    verificationCodeExpiryMinutes,
-                    TimeUnit.MINUTES
+                    Duration.ofMinutes(verificationCodeExpiryMinutes)
             );
 
             user = authRepository.save(user);
@@ -179,7 +209,7 @@ public class AuthService {
                     .message("Registration successful! Please check your email for verification code.")
                     .build();
 
-        } catch (UserAuthenticationException e) {
+        } catch (UserAuthenticationException | PasswordHashingBusyException e) {
             throw e;
         } catch (Exception e) {
             log.error("💥 Unexpected error during registration", e);
@@ -205,8 +235,8 @@ public class AuthService {
                         );
                     });
 
-            String verificationKey = VERIFICATION_CODE_PREFIX + email;
-            String storedHashedCode = redisTemplate.opsForValue().get(verificationKey);
+            String storedHashedCode = tokenStore.findCode(TokenStore.CodePurpose.EMAIL_VERIFICATION, email)
+                    .orElse(null);
 
             if (storedHashedCode == null) {
                 log.warn("⏰ Verification code expired for email: {}", email);
@@ -218,7 +248,7 @@ public class AuthService {
             log.debug("🔍 Verifying code for email: {}", email);
             log.debug("📝 Provided code: {}", providedVerificationCode);
 
-            if (!passwordEncoder.matches(providedVerificationCode, storedHashedCode)) {
+            if (!emailService.matchesVerificationCode(providedVerificationCode, storedHashedCode)) {
                 log.warn("❌ Invalid verification code attempt for email: {}", email);
                 throw new UserAuthenticationException(
                         "Invalid verification code. Please check and try again."
@@ -228,12 +258,16 @@ public class AuthService {
             user.setEmailVerified(true);
             authRepository.save(user);
 
-            // Cleanup Redis
-            redisTemplate.delete(verificationKey);
-            redisTemplate.delete(VERIFICATION_ATTEMPTS_PREFIX + email);
+            // Cleanup verification state
+            tokenStore.deleteCode(TokenStore.CodePurpose.EMAIL_VERIFICATION, email);
+            tokenStore.clearVerificationAttempts(email);
 
-            String accessToken = jwtUtil.generateToken(user);
-            String refreshToken = jwtUtil.generateRefreshToken(user);
+            // The verified flag is part of the access token claims
+            jwtUtil.markClaimsStale(user.getEmail());
+
+            CustomUserDetailsImpl userDetails = new CustomUserDetailsImpl(user);
+            String accessToken = jwtUtil.generateToken(userDetails);
+            String refreshToken = jwtUtil.generateRefreshToken(userDetails);
 
             log.info("✅ Email verification successful for: {}", email);
 
@@ -244,7 +278,7 @@ public class AuthService {
                     .message("Email verified successfully! You can now log in.")
                     .build();
 
-        } catch (UserAuthenticationException e) {
+        } catch (UserAuthenticationException | PasswordHashingBusyException e) {
             throw e;
         } catch (Exception e) {
             log.error("💥 Verification error for email: {}", email, e);
@@ -277,12 +311,7 @@ public class AuthService {
                 );
             }
 
-            String attemptsKey = VERIFICATION_ATTEMPTS_PREFIX + email;
-            Long attempts = redisTemplate.opsForValue().increment(attemptsKey);
-
-            if (attempts == 1) {
-                redisTemplate.expire(attemptsKey, resendLimitHours, TimeUnit.HOURS);
-            }
+            long attempts = tokenStore.incrementVerificationAttempts(email, Duration.ofHours(resendLimitHours));
 
             if (attempts > maxResendAttempts) {
                 LocalDateTime nextAttemptTime = LocalDateTime.now().plusHours(resendLimitHours);
@@ -297,12 +326,11 @@ public class AuthService {
             String plainVerificationCode = emailService.generateVerificationCode();
             String hashedVerificationCode = emailService.hashVerificationCode(plainVerificationCode);
 
-            String verificationKey = VERIFICATION_CODE_PREFIX + email;
-            redisTemplate.opsForValue().set(
-                    verificationKey,
+            tokenStore.saveCode(
+                    TokenStore.CodePurpose.EMAIL_VERIFICATION,
+                    email,
                     hashedVerificationCode,
-                    verificationCodeExpiryMinutes,
-                    TimeUnit.MINUTES
+                    Duration.ofMinutes(verificationCodeExpiryMinutes)
             );
 
             emailService.sendVerificationCode(email, plainVerificationCode);
@@ -317,7 +345,7 @@ public class AuthService {
                             maxResendAttempts - attempts))
                     .build();
 
-        } catch (UserAuthenticationException | VerificationResendLimitException e) {
+        } catch (UserAuthenticationException | VerificationResendLimitException | PasswordHashingBusyException e) {
             throw e;
         } catch (Exception e) {
             log.error("💥 Error resending verification code", e);
@@ -350,25 +378,29 @@ public class AuthService {
                 );
             }
 
-            Authentication authentication = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(
-                            request.getEmail(),
-                            request.getPassword()
-                    )
-            );
+            // Single BCrypt check against the user loaded above, instead of letting the
+            // authentication provider load the same user a second time
+            if (!passwordEncoder.matches(request.getPassword(), user.getPassword())) {
+                throw new BadCredentialsException("Invalid credentials");
+            }
 
-            UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+            // Move the stored hash to the current algorithm and calibrated cost while we hold the plain password
+            if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+                user.setPassword(passwordEncoder.encode(request.getPassword()));
+                authRepository.save(user);
+                log.info("🔐 Password hash re-encoded for email: {}", request.getEmail());
+            }
 
-            // Invalidate all previous sessions
-            jwtUtil.invalidateAllUserSessions(userDetails.getUsername());
+            CustomUserDetailsImpl userDetails = new CustomUserDetailsImpl(user);
 
-            // Generate new tokens
-            String accessToken = jwtUtil.generateToken(userDetails);
-            String refreshToken = jwtUtil.generateRefreshToken(userDetails);
+            // Invalidate all previous sessions; one Redis call that also yields the new generation
+            long generation = jwtUtil.invalidateAllUserSessions(userDetails.getUsername());
 
-            // Set tokens in cookies instead of returning them in the response
-            jwtUtil.generateToken(userDetails, response);
-            jwtUtil.generateRefreshToken(userDetails, response);
+            // Sign exactly one token pair and use it for both the response body and the cookies
+            String accessToken = jwtUtil.generateToken(userDetails, generation);
+            String refreshToken = jwtUtil.generateRefreshToken(userDetails, generation);
+            jwtUtil.setAccessTokenCookie(response, accessToken);
+            jwtUtil.setRefreshTokenCookie(response, refreshToken);
 
             log.info("✅ Login successful for email: {}", request.getEmail());
 
@@ -382,7 +414,7 @@ public class AuthService {
         } catch (BadCredentialsException e) {
             log.warn("❌ Login failed: Invalid credentials for email: {}", request.getEmail());
             throw new UserAuthenticationException("Invalid credentials. Please check and try again.");
-        } catch (UserAuthenticationException e) {
+        } catch (UserAuthenticationException | PasswordHashingBusyException e) {
             throw e;
         } catch (Exception e) {
             log.error("💥 Unexpected error during login for email: {}", request.getEmail(), e);
@@ -426,49 +458,67 @@ public class AuthService {
      * @param refreshToken The refresh token provided by the client
      * @return AuthResponse containing new tokens and user information
      */
-    @Transactional
     public AuthResponse refreshToken(String refreshToken) {
         try {
             log.info("🔄 Starting token refresh process.");
 
-            // Check if the token is blacklisted
-            if (jwtUtil.isTokenBlacklisted(refreshToken)) {
-                log.warn("❌ Token refresh failed: Provided refresh token is blacklisted.");
+            // Verify the signature once; every check below works on the parsed view
+            ParsedToken parsedToken;
+            try {
+                parsedToken = jwtUtil.parseToken(refreshToken);
+            } catch (JwtException | IllegalArgumentException e) {
+                log.warn("❌ Token refresh failed: Refresh token is malformed or expired.");
+                throw new UserAuthenticationException(
+                        "Invalid refresh token. Please login again."
+                );
+            }
+
+            if (!parsedToken.isRefreshToken()) {
+                log.warn("❌ Token refresh failed: Provided token is not a refresh token.");
                 throw new UserAuthenticationException(
                         "Invalid refresh token. Please login again."
                 );
             }
 
-            // Extract the username from the token
-            String username = jwtUtil.extractUsername(refreshToken);
+            String username = parsedToken.getSubject();
             log.debug("🔍 Extracted username from refresh token: {}", username);
 
-            // Load user details
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            // Retire the old refresh token and register its successor in one atomic step
+            String newRefreshTokenId = jwtUtil.newTokenId();
+            RefreshRotation rotation = jwtUtil.rotateRefreshToken(parsedToken, newRefreshTokenId);
 
-            // Validate the token
-            if (!jwtUtil.validateToken(refreshToken, userDetails)) {
-                log.warn("❌ Token refresh failed: Invalid token for user: {}", username);
+            if (rotation.getOutcome() == RefreshRotation.Outcome.REUSED) {
+                log.warn("🚨 Refresh token reuse detected for user: {}. All sessions revoked.", username);
+                throw new UserAuthenticationException(
+                        "This refresh token has already been used. Please login again."
+                );
+            }
+            if (!rotation.isRotated()) {
+                log.warn("❌ Token refresh failed: Invalid token for user: {} ({})", username, rotation.getOutcome());
                 throw new UserAuthenticationException(
                         "Invalid refresh token. Please login again."
                 );
             }
 
-            // Invalidate the old refresh token
-            jwtUtil.invalidateToken(refreshToken);
+            // Only go to the database when the token has no usable principal claims
+            CustomUserDetailsImpl userDetails = parsedToken.hasPrincipalClaims() && !rotation.isClaimsStale()
+                    ? new CustomUserDetailsImpl(
+                            parsedToken.getUserId(),
+                            username,
+                            parsedToken.getEmailVerified(),
+                            parsedToken.getRoles())
+                    : (CustomUserDetailsImpl) userDetailsService.loadUserByUsername(username);
 
             // Generate new tokens
-            String newAccessToken = jwtUtil.generateToken(userDetails);
-            String newRefreshToken = jwtUtil.generateRefreshToken(userDetails);
-
-            User user = (User) userDetails;
+            String newAccessToken = jwtUtil.generateToken(userDetails, rotation.getGeneration());
+            String newRefreshToken = jwtUtil.generateRefreshToken(userDetails, rotation.getGeneration(), newRefreshTokenId);
 
             log.info("✅ Token refresh successful for user: {}", username);
 
             return AuthResponse.builder()
                     .accessToken(newAccessToken)
                     .refreshToken(newRefreshToken)
-                    .user(AuthMapper.toResponse(user))
+                    .user(AuthMapper.toResponse(userDetails))
                     .message("Token refreshed successfully.")
                     .build();
 
@@ -509,13 +559,12 @@ public class AuthService {
             String plainResetToken = emailService.generateVerificationCode();
             String hashedResetToken = emailService.hashVerificationCode(plainResetToken);
 
-            // Store reset token in Redis
-            String resetTokenKey = PASSWORD_RESET_TOKEN_PREFIX + email;
-            redisTemplate.opsForValue().set(
-                    resetTokenKey,
+            // Store reset token
+            tokenStore.saveCode(
+                    TokenStore.CodePurpose.PASSWORD_RESET,
+                    email,
                     hashedResetToken,
-                    passwordResetTokenExpiryMinutes,
-                    TimeUnit.MINUTES
+                    Duration.ofMinutes(passwordResetTokenExpiryMinutes)
             );
 
             // Send reset email
@@ -528,7 +577,7 @@ public class AuthService {
                     .message("If an account exists with this email, you will receive password reset instructions.")
                     .build();
 
-        } catch (UserAuthenticationException e) {
+        } catch (UserAuthenticationException | PasswordHashingBusyException e) {
             throw e;
         } catch (Exception e) {
             log.error("💥 Error in forgot password process", e);
@@ -552,15 +601,15 @@ public class AuthService {
                         return new UserAuthenticationException("Invalid or expired reset token.");
                     });
 
-            String resetTokenKey = PASSWORD_RESET_TOKEN_PREFIX + email;
-            String storedHashedToken = redisTemplate.opsForValue().get(resetTokenKey);
+            String storedHashedToken = tokenStore.findCode(TokenStore.CodePurpose.PASSWORD_RESET, email)
+                    .orElse(null);
 
             if (storedHashedToken == null) {
                 log.warn("⏰ Reset token expired for email: {}", email);
                 throw new UserAuthenticationException("Reset token has expired. Please request a new one.");
             }
 
-            if (!passwordEncoder.matches(resetToken, storedHashedToken)) {
+            if (!emailService.matchesVerificationCode(resetToken, storedHashedToken)) {
                 log.warn("❌ Invalid reset token used for email: {}", email);
                 throw new UserAuthenticationException("Invalid reset token.");
             }
@@ -569,9 +618,9 @@ public class AuthService {
             user.setPassword(passwordEncoder.encode(newPassword));
             authRepository.save(user);
 
-            // Cleanup Redis and invalidate all sessions
-            redisTemplate.delete(resetTokenKey);
-            jwtUtil.invalidateAllUserSessions(user.getUsername());
+            // Cleanup reset state and invalidate all sessions
+            tokenStore.deleteCode(TokenStore.CodePurpose.PASSWORD_RESET, email);
+            jwtUtil.invalidateAllUserSessions(user.getEmail());
 
             log.info("✅ Password reset successful for email: {}", email);
 
@@ -579,7 +628,7 @@ public class AuthService {
                     .message("Password has been reset successfully. You can now login with your new password.")
                     .build();
 
-        } catch (UserAuthenticationException e) {
+        } catch (UserAuthenticationException | PasswordHashingBusyException e) {
             throw e;
         } catch (Exception e) {
             log.error("💥 Error in reset password process", e);
@@ -614,7 +663,7 @@ public class AuthService {
             authRepository.save(user);
 
             // Invalidate all sessions
-            jwtUtil.invalidateAllUserSessions(user.getUsername());
+            jwtUtil.invalidateAllUserSessions(user.getEmail());
 
             log.info("✅ Password change successful for email: {}", email);
 
@@ -622,7 +671,7 @@ public class AuthService {
                     .message("Password changed successfully. Please login with your new password.")
                     .build();
 
-        } catch (UserAuthenticationException e) {
+        } catch (UserAuthenticationException | PasswordHashingBusyException e) {
             throw e;
         } catch (Exception e) {
             log.error("💥 Error in password change process", e);
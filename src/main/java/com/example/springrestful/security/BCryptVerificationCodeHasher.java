@@ -0,0 +1,36 @@
+package com.example.springrestful.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hashes codes with the application password encoder. Kept so codes issued before the HMAC
+ * hasher was introduced can still be verified until they expire.
+ */
+@Component
+@RequiredArgsConstructor
+public class BCryptVerificationCodeHasher implements VerificationCodeHasher {
+
+    private final PasswordEncoder passwordEncoder;
+
+    @Override
+    public String getName() {
+        return "bcrypt";
+    }
+
+    @Override
+    public String hash(String plainCode) {
+        return passwordEncoder.encode(plainCode);
+    }
+
+    @Override
+    public boolean matches(String plainCode, String storedHash) {
+        return passwordEncoder.matches(plainCode, storedHash);
+    }
+
+    @Override
+    public boolean supports(String storedHash) {
+        return storedHash != null && (storedHash.startsWith("$2") || storedHash.startsWith("{bcrypt}"));
+    }
+}
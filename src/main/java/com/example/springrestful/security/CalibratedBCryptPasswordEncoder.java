@@ -0,0 +1,86 @@
+package com.example.springrestful.security;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt encoder whose work factor is chosen at startup to hit a target hashing latency on the
+ * hardware it runs on.
+ * <p>
+ * Nodes of a mixed fleet calibrate to different costs, so {@link #upgradeEncoding(String)} only
+ * reports hashes below the local cost, or above the highest cost calibration may pick; hashes in
+ * between were produced by a faster peer and are kept rather than re-encoded back and forth.
+ * A pinned strength re-encodes every hash that differs from it.
+ */
+@Slf4j
+@Getter
+public class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+    private static final int SAMPLES = 3;
+
+    private final int strength;
+    private final int maxStrength;
+
+    public CalibratedBCryptPasswordEncoder(int strength) {
+        this(strength, strength);
+    }
+
+    public CalibratedBCryptPasswordEncoder(int strength, int maxStrength) {
+        super(strength);
+        this.strength = strength;
+        this.maxStrength = Math.max(strength, maxStrength);
+    }
+
+    /**
+     * Picks the highest cost in {@code [minStrength, maxStrength]} whose median hashing time stays
+     * within {@code targetMillis}, never going below {@code minStrength}.
+     */
+    public static CalibratedBCryptPasswordEncoder calibrate(long targetMillis, int minStrength, int maxStrength) {
+        int chosen = minStrength;
+        for (int strength = minStrength; strength <= maxStrength; strength++) {
+            long millis = medianHashMillis(strength);
+            log.debug("🔐 BCrypt cost {} takes {} ms", strength, millis);
+            if (millis > targetMillis) {
+                break;
+            }
+            chosen = strength;
+            // Each step doubles the cost, so stop early once the next one would clearly overshoot
+            if (millis * 2 > targetMillis) {
+                break;
+            }
+        }
+        log.info("🔐 Calibrated BCrypt cost {} for a {} ms target", chosen, targetMillis);
+        return new CalibratedBCryptPasswordEncoder(chosen, maxStrength);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.isEmpty()) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        if (!matcher.find()) {
+            return true;
+        }
+        int cost = Integer.parseInt(matcher.group(1));
+        return cost < strength || cost > maxStrength;
+    }
+
+    private static long medianHashMillis(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            encoder.encode("calibration-password");
+            samples[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(samples);
+        return samples[SAMPLES / 2];
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.springrestful.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Pool of SMTP workers the email queues are drained into, shared by the {@link EmailLane}s.
+ * <p>
+ * {@code workers} sends run at once. Per lane, at most {@code max-in-flight} emails are taken off
+ * the queues and not yet sent: consumers {@link #reserve(EmailLane, long) reserve} a slot before
+ * they read. When the SMTP server slows down, sends hold their slot longer, consumers stop reading
+ * and the backlog stays in Redis instead of piling up in this process.
+ * <p>
+ * Idle workers pick the next email by smooth weighted round robin over the lanes that have emails
+ * waiting, so with weights 4:1 a transactional email is at most a few bulk sends away from a
+ * worker however large the bulk backlog. A lane never runs more than {@code max-concurrency} sends
+ * at once, which keeps workers free for the other lanes.
+ * <p>
+ * On shutdown the workers get {@code shutdown-timeout-ms} to send what was handed over. Emails
+ * still waiting for a worker after that are handed back through their abandon callback, so the
+ * consumer can return them to the queue; sends still running are interrupted and their entries
+ * stay pending in the stream until another consumer claims them.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmailDispatchExecutor {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.email.dispatch.workers}")
+    private int workers;
+
+    @Value("${application.email.dispatch.shutdown-timeout-ms}")
+    private long shutdownTimeoutMs;
+
+    @Value("${application.email.lanes.transactional.weight}")
+    private int transactionalWeight;
+
+    @Value("${application.email.lanes.transactional.max-in-flight}")
+    private int transactionalMaxInFlight;
+
+    @Value("${application.email.lanes.transactional.max-concurrency}")
+    private int transactionalMaxConcurrency;
+
+    @Value("${application.email.lanes.transactional.slo-ms}")
+    private long transactionalSloMs;
+
+    @Value("${application.email.lanes.bulk.weight}")
+    private int bulkWeight;
+
+    @Value("${application.email.lanes.bulk.max-in-flight}")
+    private int bulkMaxInFlight;
+
+    @Value("${application.email.lanes.bulk.max-concurrency}")
+    private int bulkMaxConcurrency;
+
+    @Value("${application.email.lanes.bulk.slo-ms}")
+    private long bulkSloMs;
+
+    private record Task(LaneState lane, BooleanSupplier send, Runnable abandon, long queuedAt) {
+    }
+
+    private static final class LaneState {
+        private final EmailLane lane;
+        private final int weight;
+        private final int maxConcurrency;
+        private final Duration slo;
+        private final Semaphore slots;
+        private final ArrayDeque<Task> waiting = new ArrayDeque<>();
+        private final AtomicInteger active = new AtomicInteger();
+        // Smooth weighted round robin state, guarded by the scheduler lock
+        private int currentWeight;
+
+        private Timer waitTimer;
+        private Timer sendTimer;
+        private Timer deliveryTimer;
+        private Counter sent;
+        private Counter failed;
+        private Counter sloBreached;
+
+        private LaneState(EmailLane lane, int weight, int maxInFlight, int maxConcurrency, long sloMs) {
+            this.lane = lane;
+            this.weight = Math.max(weight, 1);
+            this.maxConcurrency = Math.max(maxConcurrency, 1);
+            this.slo = Duration.ofMillis(sloMs);
+            this.slots = new Semaphore(Math.max(maxInFlight, 1));
+        }
+    }
+
+    private final Map<EmailLane, LaneState> lanes = new EnumMap<>(EmailLane.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskAvailable = lock.newCondition();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private volatile boolean stopping;
+
+    @PostConstruct
+    void start() {
+        lanes.put(EmailLane.TRANSACTIONAL, new LaneState(EmailLane.TRANSACTIONAL, transactionalWeight,
+                transactionalMaxInFlight, transactionalMaxConcurrency, transactionalSloMs));
+        lanes.put(EmailLane.BULK, new LaneState(EmailLane.BULK, bulkWeight,
+                bulkMaxInFlight, bulkMaxConcurrency, bulkSloMs));
+        lanes.values().forEach(this::registerMetrics);
+
+        for (int i = 1; i <= workers; i++) {
+            Thread thread = new Thread(this::work, "email-dispatch-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workerThreads.add(thread);
+        }
+
+        log.info("📮 Email dispatch pool started with {} workers, lane weights transactional {} / bulk {}",
+                workers, transactionalWeight, bulkWeight);
+    }
+
+    /**
+     * Lets the workers finish the emails already handed over, up to {@code shutdown-timeout-ms},
+     * then hands the ones still waiting back to their callers. Runs once; the email processor calls
+     * it right after stopping the consumers, while Redis is still available to take emails back.
+     */
+    @PreDestroy
+    public synchronized void stop() throws InterruptedException {
+        if (stopping) {
+            return;
+        }
+        stopping = true;
+        signalAll();
+
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        for (Thread thread : workerThreads) {
+            thread.join(Math.max(deadline - System.currentTimeMillis(), 1));
+        }
+        if (workerThreads.stream().noneMatch(Thread::isAlive)) {
+            return;
+        }
+
+        List<Task> abandoned = new ArrayList<>();
+        lock.lock();
+        try {
+            for (LaneState lane : lanes.values()) {
+                abandoned.addAll(lane.waiting);
+                lane.waiting.clear();
+            }
+            taskAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        log.warn("⚠️ Email dispatch pool did not finish within {} ms, returning {} waiting emails",
+                shutdownTimeoutMs, abandoned.size());
+        for (Task task : abandoned) {
+            try {
+                task.abandon().run();
+            } catch (RuntimeException e) {
+                log.error("💥 Failed to return an abandoned email", e);
+            } finally {
+                task.lane().slots.release();
+            }
+        }
+        workerThreads.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Slots of a lane left for emails not taken off its queues yet.
+     */
+    public int availableCapacity(EmailLane lane) {
+        return stopping ? 0 : lanes.get(lane).slots.availablePermits();
+    }
+
+    /**
+     * Waits up to {@code timeoutMs} for a free slot of the lane and holds it for the caller, who
+     * must either {@link #dispatch(EmailLane, BooleanSupplier, Runnable) dispatch} into it or
+     * {@link #release(EmailLane) release} it.
+     */
+    public boolean reserve(EmailLane lane, long timeoutMs) throws InterruptedException {
+        return !stopping && lanes.get(lane).slots.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean tryReserve(EmailLane lane) {
+        return !stopping && lanes.get(lane).slots.tryAcquire();
+    }
+
+    public void release(EmailLane lane) {
+        lanes.get(lane).slots.release();
+    }
+
+    /**
+     * Hands one email to the workers using a slot of the lane the caller already holds. The slot
+     * is returned when the send completes, or right away when the pool is shutting down.
+     *
+     * @param abandon runs instead of {@code send} when the pool stops before a worker took the email
+     * @return false when the pool is shutting down; the caller keeps the email
+     */
+    public boolean dispatch(EmailLane lane, BooleanSupplier send, Runnable abandon) {
+        LaneState state = lanes.get(lane);
+        lock.lock();
+        try {
+            if (stopping) {
+                state.slots.release();
+                return false;
+            }
+            state.waiting.addLast(new Task(state, send, abandon, System.nanoTime()));
+            taskAvailable.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that an email queued at {@code enqueuedAtMillis} was handed to the SMTP server,
+     * against the lane's delivery SLO.
+     */
+    public void recordDelivered(EmailLane lane, long enqueuedAtMillis) {
+        LaneState state = lanes.get(lane);
+        Duration elapsed = Duration.ofMillis(Math.max(System.currentTimeMillis() - enqueuedAtMillis, 0));
+        state.deliveryTimer.record(elapsed);
+        if (elapsed.compareTo(state.slo) > 0) {
+            state.sloBreached.increment();
+        }
+    }
+
+    private void work() {
+        Task task;
+        while ((task = take()) != null) {
+            LaneState lane = task.lane();
+            lane.waitTimer.record(System.nanoTime() - task.queuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                if (lane.sendTimer.record(task.send()::getAsBoolean)) {
+                    lane.sent.increment();
+                } else {
+                    lane.failed.increment();
+                }
+            } catch (RuntimeException e) {
+                lane.failed.increment();
+                log.error("💥 Email dispatch task failed", e);
+            } finally {
+                lane.active.decrementAndGet();
+                lane.slots.release();
+                // A lane at its concurrency limit may have emails waiting that can run now
+                signalAll();
+            }
+        }
+    }
+
+    // Blocks until a lane below its concurrency limit has an email waiting; null once stopped
+    private Task take() {
+        lock.lock();
+        try {
+            while (true) {
+                Task task = next();
+                if (task != null) {
+                    return task;
+                }
+                if (stopping && lanes.values().stream().allMatch(lane -> lane.waiting.isEmpty())) {
+                    return null;
+                }
+                taskAvailable.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Smooth weighted round robin: every eligible lane gains its weight, the one with the most
+    // credit is served and pays the total, so lanes are interleaved in proportion to their weights
+    private Task next() {
+        LaneState selected = null;
+        int totalWeight = 0;
+        for (LaneState lane : lanes.values()) {
+            if (lane.waiting.isEmpty() || lane.active.get() >= lane.maxConcurrency) {
+                continue;
+            }
+            lane.currentWeight += lane.weight;
+            totalWeight += lane.weight;
+            if (selected == null || lane.currentWeight > selected.currentWeight) {
+                selected = lane;
+            }
+        }
+        if (selected == null) {
+            return null;
+        }
+        selected.currentWeight -= totalWeight;
+        selected.active.incrementAndGet();
+        return selected.waiting.pollFirst();
+    }
+
+    private void signalAll() {
+        lock.lock();
+        try {
+            taskAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void registerMetrics(LaneState lane) {
+        String tag = lane.lane.tag();
+        int capacity = lane.slots.availablePermits();
+        Gauge.builder("email.dispatch.in_flight", lane.slots, s -> capacity - s.availablePermits())
+                .description("Emails taken off the queues and not sent yet")
+                .tag("lane", tag)
+                .register(meterRegistry);
+        Gauge.builder("email.dispatch.active", lane.active, AtomicInteger::get)
+                .description("SMTP sends currently running")
+                .tag("lane", tag)
+                .register(meterRegistry);
+        lane.waitTimer = Timer.builder("email.dispatch.wait")
+                .description("Time an email waited for a worker after being taken off its queue")
+                .tag("lane", tag)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        lane.sendTimer = Timer.builder("email.dispatch.send.duration")
+                .description("Time spent handing a single email to the SMTP server")
+                .tag("lane", tag)
+                .register(meterRegistry);
+        lane.deliveryTimer = Timer.builder("email.lane.delivery")
+                .description("Time from queueing an email to handing it to the SMTP server, retries included")
+                .tag("lane", tag)
+                .serviceLevelObjectives(lane.slo)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        lane.sent = Counter.builder("email.dispatch.sent").tag("lane", tag).register(meterRegistry);
+        lane.failed = Counter.builder("email.dispatch.failed").tag("lane", tag).register(meterRegistry);
+        lane.sloBreached = Counter.builder("email.lane.slo.breached")
+                .description("Emails delivered later than the lane's SLO")
+                .tag("lane", tag)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.springrestful.security;
+
+/**
+ * Priority class of an email queue. Each lane has its own in-flight slots, concurrency limit and
+ * delivery SLO, and the dispatch workers are shared between lanes by weight.
+ */
+public enum EmailLane {
+    /**
+     * Verification codes and password resets, which a user is waiting for and which expire.
+     */
+    TRANSACTIONAL,
+    /**
+     * Invitations and other emails sent in batches.
+     */
+    BULK;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
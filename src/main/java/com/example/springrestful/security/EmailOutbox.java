@@ -0,0 +1,42 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.entity.EmailOutboxMessage;
+import com.example.springrestful.exception.EmailSendingException;
+import com.example.springrestful.repository.EmailOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+
+/**
+ * Records emails in the {@code email_outbox} table as part of the caller's transaction.
+ * <p>
+ * Nothing leaves the process here: the {@link EmailOutboxRelay} publishes the rows to the email
+ * queues after the transaction committed, so SMTP never holds a database connection and an email
+ * is only sent when its transaction actually committed.
+ */
+@Component
+@RequiredArgsConstructor
+public class EmailOutbox {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(ReliableEmailQueue queue, String recipient, Map<String, String> payload) {
+        try {
+            outboxRepository.save(EmailOutboxMessage.builder()
+                    .queue(queue.getName())
+                    .recipient(recipient)
+                    .payload(objectMapper.writeValueAsString(payload))
+                    .status(EmailOutboxMessage.Status.PENDING)
+                    .build());
+        } catch (JsonProcessingException e) {
+            throw new EmailSendingException("Failed to record email for " + recipient, e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.entity.EmailOutboxMessage;
+import com.example.springrestful.repository.EmailOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes committed {@link EmailOutboxMessage}s to their email queues.
+ * <p>
+ * Each batch is locked with SKIP LOCKED, pushed to Redis and marked published in one short
+ * transaction, so several nodes can relay side by side. If the commit fails after the push the
+ * batch is published again, in line with the at-least-once delivery of the queues. Published
+ * rows are kept for {@code retention-hours} and then purged.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmailOutboxRelay {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailQueueService emailQueueService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.email.outbox.batch-size}")
+    private int batchSize;
+
+    @Value("${application.email.outbox.retention-hours}")
+    private long retentionHours;
+
+    private Counter published;
+    private Timer relayLag;
+
+    @PostConstruct
+    void registerMetrics() {
+        published = Counter.builder("email.outbox.published").register(meterRegistry);
+        relayLag = Timer.builder("email.outbox.relay.lag")
+                .description("Time between an outbox row being written and published to its queue")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${application.email.outbox.poll-interval-ms}")
+    public void relay() {
+        try {
+            Integer count;
+            do {
+                count = transactionTemplate.execute(status -> publishBatch());
+            } while (count != null && count == batchSize);
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to relay email outbox, retrying on the next tick: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${application.email.outbox.cleanup-interval-ms}")
+    public void purgePublished() {
+        try {
+            Integer deleted = transactionTemplate.execute(status -> outboxRepository.deleteByStatusAndPublishedAtBefore(
+                    EmailOutboxMessage.Status.PUBLISHED, LocalDateTime.now().minusHours(retentionHours)));
+            if (deleted != null && deleted > 0) {
+                log.info("🧹 Purged {} published email outbox rows", deleted);
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to purge email outbox: {}", e.getMessage());
+        }
+    }
+
+    private int publishBatch() {
+        List<EmailOutboxMessage> batch = outboxRepository.lockOldestByStatus(
+                EmailOutboxMessage.Status.PENDING, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, List<EmailOutboxMessage>> byQueue = batch.stream()
+                .collect(Collectors.groupingBy(EmailOutboxMessage::getQueue));
+        byQueue.forEach((queueName, messages) -> {
+            ReliableEmailQueue queue = emailQueueService.findQueue(queueName)
+                    .orElseThrow(() -> new IllegalStateException("Unknown email queue in outbox: " + queueName));
+            queue.pushAll(messages.stream().map(EmailOutboxMessage::getPayload).toList());
+        });
+
+        LocalDateTime now = LocalDateTime.now();
+        for (EmailOutboxMessage message : batch) {
+            message.setStatus(EmailOutboxMessage.Status.PUBLISHED);
+            message.setPublishedAt(now);
+            relayLag.record(Duration.between(message.getCreatedAt(), now));
+        }
+        outboxRepository.saveAll(batch);
+        published.increment(batch.size());
+        return batch.size();
+    }
+}
@@ -1,15 +1,38 @@
 package com.example.springrestful.security;
 
-import com.example.springrestful.util.EmailUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
+/**
+ * Feeds the email queues to the {@link EmailDispatchExecutor}.
+ * <p>
+ * Each queue has an {@link EmailQueueConsumer} blocking on it, so a queued email reaches a worker
+ * right away instead of on the next poll. Every node joins each queue's consumer group as
+ * {@code application.email.stream.consumer-name}, which must be unique per node and should survive
+ * restarts. Consumers start once the application is ready and are stopped before the workers on
+ * shutdown. A maintenance tick requeues due retries and trims the streams. Queue depths, consumer
+ * lag and the time entries spent queued are exported as metrics.
+ * <p>
+ * Verification and password reset emails go through the {@link EmailLane#TRANSACTIONAL} lane and
+ * invitations through the {@link EmailLane#BULK} one, so a large invitation batch cannot hold up
+ * codes that expire.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
@@ -18,41 +41,145 @@ public class EmailProcessor {
     private final ObjectMapper objectMapper;
     private final EmailQueueService emailQueueService;
     private final EmailService emailService;
-    private final RedisTemplate<String, String> redisTemplate;
-    private static final String INVITATION_QUEUE_KEY = "invitation:queue";
+    private final EmailDispatchExecutor dispatchExecutor;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
 
-    @Scheduled(fixedDelay = 1000)
-    public void processEmailQueue() {
-        try {
-            // Process verification emails
-            Map<String, String> emailData = emailQueueService.dequeueEmail();
-            if (emailData != null) {
-                processVerificationEmail(emailData);
-            }
+    @Value("${application.email.dispatch.batch-size}")
+    private int batchSize;
+
+    @Value("${application.email.dispatch.block-timeout-seconds}")
+    private int blockTimeoutSeconds;
+
+    @Value("${application.email.dispatch.shutdown-timeout-ms}")
+    private long shutdownTimeoutMs;
+
+    @Value("${application.email.queue.maintenance-batch-size}")
+    private int maintenanceBatchSize;
+
+    @Value("${application.email.stream.consumer-name}")
+    private String consumerName;
+
+    @Value("${application.email.stream.claim-interval-ms}")
+    private long claimIntervalMs;
+
+    @Value("${application.email.stream.consumer-idle-timeout-ms}")
+    private long consumerIdleTimeoutMs;
+
+    private Timer verificationLag;
+    private Timer passwordResetLag;
+    private Timer invitationLag;
+    private List<EmailQueueConsumer> consumers = List.of();
 
-            // Process invitation emails
-            String invitationEmail = redisTemplate.opsForList().leftPop(INVITATION_QUEUE_KEY);
-            if (invitationEmail != null) {
-                processInvitationEmail(invitationEmail);
+    @PostConstruct
+    void registerMetrics() {
+        verificationLag = queueLagTimer(emailQueueService.getVerificationQueue());
+        passwordResetLag = queueLagTimer(emailQueueService.getPasswordResetQueue());
+        invitationLag = queueLagTimer(emailQueueService.getInvitationQueue());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startConsumers() {
+        consumers = List.of(
+                consumer(emailQueueService.getVerificationQueue(), EmailLane.TRANSACTIONAL, this::processVerificationEmail),
+                consumer(emailQueueService.getPasswordResetQueue(), EmailLane.TRANSACTIONAL, this::processPasswordResetEmail),
+                consumer(emailQueueService.getInvitationQueue(), EmailLane.BULK, this::processInvitationEmail)
+        );
+        consumers.get(0).start("email-consumer-verification");
+        consumers.get(1).start("email-consumer-password-reset");
+        consumers.get(2).start("email-consumer-invitation");
+        log.info("📬 Email queue consumers started as {}", consumerName);
+    }
+
+    @PreDestroy
+    void stopConsumers() throws InterruptedException {
+        for (EmailQueueConsumer consumer : consumers) {
+            consumer.stop(shutdownTimeoutMs);
+        }
+        // Before Redis goes away, so emails the workers did not get to can be returned to the queues
+        dispatchExecutor.stop();
+    }
+
+    @Scheduled(fixedDelayString = "${application.email.queue.maintenance-interval-ms}")
+    public void maintainQueues() {
+        for (ReliableEmailQueue queue : emailQueueService.queues()) {
+            try {
+                queue.maintain(maintenanceBatchSize);
+            } catch (Exception e) {
+                log.warn("⚠️ Failed to maintain email queue {}: {}", queue.getName(), e.getMessage());
             }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${application.email.dispatch.depth-refresh-ms}")
+    public void refreshQueueDepth() {
+        try {
+            emailQueueService.queues().forEach(ReliableEmailQueue::refreshDepths);
         } catch (Exception e) {
-            EmailUtil.logEmailError("Error processing email queue", "batch processing", e);
+            log.warn("⚠️ Failed to refresh email queue depth: {}", e.getMessage());
         }
     }
 
-    private void processVerificationEmail(Map<String, String> emailData) {
-        String toEmail = emailData.get("toEmail");
-        String verificationCode = emailData.get("verificationCode");
-        emailService.processAndSendEmail(toEmail, verificationCode);
+    private EmailQueueConsumer consumer(ReliableEmailQueue queue, EmailLane lane, Consumer<String> handler) {
+        return new EmailQueueConsumer(queue, lane, consumerName, redisTemplate.getRequiredConnectionFactory(),
+                dispatchExecutor, handler, blockTimeoutSeconds, batchSize, claimIntervalMs,
+                Duration.ofMillis(consumerIdleTimeoutMs));
+    }
+
+    // Handlers throw when the email could not be sent, so the queue retries or dead-letters it
+    private void processVerificationEmail(String emailJson) {
+        Map<String, String> emailData = readEntry(emailJson);
+        recordLag(verificationLag, emailData);
+        emailService.processAndSendEmail(emailData.get("toEmail"), emailData.get("verificationCode"));
+        recordDelivered(EmailLane.TRANSACTIONAL, emailData);
+    }
+
+    private void processPasswordResetEmail(String emailJson) {
+        Map<String, String> emailData = readEntry(emailJson);
+        recordLag(passwordResetLag, emailData);
+        emailService.processAndSendPasswordResetEmail(emailData.get("toEmail"), emailData.get("resetToken"));
+        recordDelivered(EmailLane.TRANSACTIONAL, emailData);
     }
 
     private void processInvitationEmail(String invitationJson) {
+        Map<String, String> invitationData = readEntry(invitationJson);
+        recordLag(invitationLag, invitationData);
+        // Entries queued before plain-text parts were rendered carry no textContent
+        emailService.processAndSendHtmlEmail(invitationData.get("email"), invitationData.get("subject"),
+                invitationData.get("content"), invitationData.get("textContent"));
+        recordDelivered(EmailLane.BULK, invitationData);
+    }
+
+    private Map<String, String> readEntry(String json) {
         try {
-            Map<String, String> invitationData = objectMapper.readValue(invitationJson, Map.class);
-            // Process invitation email logic
-            // Implementation details...
+            return objectMapper.readValue(json, Map.class);
         } catch (Exception e) {
-            EmailUtil.logEmailError("Error processing invitation email", "invitation processing", e);
+            throw new IllegalArgumentException("Unreadable email queue entry", e);
         }
     }
-}
\ No newline at end of file
+
+    // Only first attempts are measured; entries queued before the timestamp was added carry none
+    private void recordLag(Timer timer, Map<String, String> entry) {
+        String enqueuedAt = entry.get("enqueuedAt");
+        if (enqueuedAt == null || entry.containsKey("attempts")) {
+            return;
+        }
+        long lag = System.currentTimeMillis() - Long.parseLong(enqueuedAt);
+        timer.record(Duration.ofMillis(Math.max(lag, 0)));
+    }
+
+    private void recordDelivered(EmailLane lane, Map<String, String> entry) {
+        String enqueuedAt = entry.get("enqueuedAt");
+        if (enqueuedAt != null) {
+            dispatchExecutor.recordDelivered(lane, Long.parseLong(enqueuedAt));
+        }
+    }
+
+    private Timer queueLagTimer(ReliableEmailQueue queue) {
+        return Timer.builder("email.queue.lag")
+                .description("Time an email spent queued before a worker picked it up")
+                .tag("queue", queue.getName())
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.springrestful.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Consumer thread for one {@link ReliableEmailQueue}, reading it as {@code consumerName} within
+ * the queue's consumer group and dispatching into the queue's {@link EmailLane}.
+ * <p>
+ * Reserves dispatch slots of the lane, then blocks on XREADGROUP for at most that many entries,
+ * so an email is handed to the SMTP workers as soon as it is queued and an empty stream costs one
+ * command per {@code blockTimeoutSeconds}. Workers acknowledge an entry once it is sent and hand it
+ * to the retry policy when the handler throws. On start the entries this consumer left pending in
+ * a previous run are sent first, once per process, and every {@code claimIntervalMs} the entries
+ * other consumers left pending past the visibility timeout are claimed.
+ * <p>
+ * The thread holds its own connection, because a blocking read ties the connection up until it
+ * returns. The block timeout must stay below the Redis command timeout.
+ */
+@Slf4j
+public class EmailQueueConsumer implements Runnable {
+
+    private static final long ERROR_BACKOFF_MILLIS = 1000;
+
+    private final ReliableEmailQueue queue;
+    private final EmailLane lane;
+    private final String consumerName;
+    private final RedisConnectionFactory connectionFactory;
+    private final EmailDispatchExecutor dispatchExecutor;
+    private final Consumer<String> handler;
+    private final int blockTimeoutSeconds;
+    private final int batchSize;
+    private final long claimIntervalMs;
+    private final Duration consumerIdleTimeout;
+
+    private volatile boolean running = true;
+    private Thread thread;
+    private long lastClaimAt;
+    // Pending entries are replayed once per process start; after a reconnect the ones already
+    // handed to the workers are still pending and must not be sent again
+    private String pendingReplayedUpTo = "0-0";
+    private boolean pendingReplayed;
+
+    /**
+     * @param handler sends one queued entry, throwing when the send failed
+     */
+    public EmailQueueConsumer(ReliableEmailQueue queue,
+                              EmailLane lane,
+                              String consumerName,
+                              RedisConnectionFactory connectionFactory,
+                              EmailDispatchExecutor dispatchExecutor,
+                              Consumer<String> handler,
+                              int blockTimeoutSeconds,
+                              int batchSize,
+                              long claimIntervalMs,
+                              Duration consumerIdleTimeout) {
+        this.queue = queue;
+        this.lane = lane;
+        this.consumerName = consumerName;
+        this.connectionFactory = connectionFactory;
+        this.dispatchExecutor = dispatchExecutor;
+        this.handler = handler;
+        this.blockTimeoutSeconds = blockTimeoutSeconds;
+        this.batchSize = batchSize;
+        this.claimIntervalMs = claimIntervalMs;
+        this.consumerIdleTimeout = consumerIdleTimeout;
+    }
+
+    public void start(String threadName) {
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops reading and waits for the current blocking read to return. Entries already read are
+     * either dispatched or released back to the stream.
+     */
+    public void stop(long timeoutMillis) throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join(timeoutMillis);
+            if (thread.isAlive()) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try (RedisConnection connection = connectionFactory.getConnection()) {
+                // Also recreates the group if the stream was deleted since
+                queue.ensureGroup();
+                consume(connection);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.error("💥 Email queue consumer for {} failed, reconnecting", queue.getName(), e);
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void consume(RedisConnection connection) throws InterruptedException {
+        // Pending entries stay pending until acknowledged, so page through them by id
+        List<ReliableEmailQueue.Entry> pending;
+        while (running && !pendingReplayed) {
+            pending = queue.readPending(connection, consumerName, pendingReplayedUpTo, batchSize);
+            if (pending.isEmpty()) {
+                pendingReplayed = true;
+                break;
+            }
+            pendingReplayedUpTo = pending.get(pending.size() - 1).id();
+            dispatchAll(pending);
+        }
+
+        while (running) {
+            claimStuckIfDue();
+
+            // Only read as many entries as there are free worker slots
+            if (!dispatchExecutor.reserve(lane, blockTimeoutSeconds * 1000L)) {
+                continue;
+            }
+            int reserved = 1;
+            while (reserved < batchSize && dispatchExecutor.tryReserve(lane)) {
+                reserved++;
+            }
+
+            List<ReliableEmailQueue.Entry> entries;
+            try {
+                entries = queue.read(connection, consumerName, reserved, Duration.ofSeconds(blockTimeoutSeconds));
+            } catch (RuntimeException e) {
+                releaseSlots(reserved);
+                throw e;
+            }
+            releaseSlots(reserved - entries.size());
+            for (ReliableEmailQueue.Entry entry : entries) {
+                dispatch(entry);
+            }
+        }
+    }
+
+    private void claimStuckIfDue() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        if (now - lastClaimAt < claimIntervalMs) {
+            return;
+        }
+        lastClaimAt = now;
+        List<ReliableEmailQueue.Entry> claimed;
+        try {
+            claimed = queue.claimStuck(consumerName, batchSize);
+            queue.removeIdleConsumers(consumerName, consumerIdleTimeout);
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Failed to claim stuck emails on {}: {}", queue.getName(), e.getMessage());
+            return;
+        }
+        dispatchAll(claimed);
+    }
+
+    // Waits for a slot per entry; entries left over when stopping go back to the stream
+    private void dispatchAll(List<ReliableEmailQueue.Entry> entries) throws InterruptedException {
+        for (ReliableEmailQueue.Entry entry : entries) {
+            boolean reserved = false;
+            while (running && !(reserved = dispatchExecutor.reserve(lane, blockTimeoutSeconds * 1000L))) {
+                // Keep waiting for a worker
+            }
+            if (!reserved) {
+                queue.release(entry);
+                continue;
+            }
+            dispatch(entry);
+        }
+    }
+
+    private void releaseSlots(int count) {
+        for (int i = 0; i < count; i++) {
+            dispatchExecutor.release(lane);
+        }
+    }
+
+    private void dispatch(ReliableEmailQueue.Entry entry) {
+        boolean accepted = dispatchExecutor.dispatch(lane, () -> {
+            try {
+                handler.accept(entry.payload());
+            } catch (RuntimeException e) {
+                queue.fail(entry, e.getMessage());
+                return false;
+            }
+            queue.acknowledge(entry);
+            return true;
+        }, () -> queue.release(entry));
+        if (!accepted) {
+            queue.release(entry);
+        }
+    }
+}
@@ -1,28 +1,118 @@
 package com.example.springrestful.security;
 
+import com.example.springrestful.dto.DeadLetterResponse;
+import com.example.springrestful.exception.ResourceNotFoundException;
 import com.example.springrestful.util.EmailUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class EmailQueueService {
-    private static final String EMAIL_QUEUE_KEY = "email:queue";
-    private static final String EMAIL_PROCESSING_KEY = "email:processing";
-    private final RedisTemplate<String, String> redisTemplate;
+    // Each queue's keys share a hash tag so moves between them stay within one cluster slot
+    private static final String EMAIL_QUEUE = "email";
+    private static final String PASSWORD_RESET_QUEUE = "password-reset";
+    private static final String INVITATION_QUEUE = "invitation";
+    private final StringRedisTemplate redisTemplate;
     private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.email.queue.visibility-timeout-ms}")
+    private long visibilityTimeoutMs;
+
+    @Value("${application.email.queue.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${application.email.queue.retry-base-delay-ms}")
+    private long retryBaseDelayMs;
+
+    @Value("${application.email.queue.retry-max-delay-ms}")
+    private long retryMaxDelayMs;
+
+    @Value("${application.email.queue.dead-letter-max-size}")
+    private int deadLetterMaxSize;
+
+    @Value("${application.email.stream.max-deliveries}")
+    private int maxDeliveries;
+
+    @Value("${application.email.stream.retention-ms}")
+    private long retentionMs;
+
+    @Value("${redis.legacy-keys.enabled}")
+    private boolean legacyKeysEnabled;
+
+    @Value("${spring.data.redis.mode:standalone}")
+    private String redisMode;
+
+    @Getter
+    private ReliableEmailQueue verificationQueue;
+    @Getter
+    private ReliableEmailQueue passwordResetQueue;
+    @Getter
+    private ReliableEmailQueue invitationQueue;
+
+    @PostConstruct
+    void init() {
+        ReliableEmailQueue.Settings settings = new ReliableEmailQueue.Settings(visibilityTimeoutMs, maxAttempts,
+                maxDeliveries, retryBaseDelayMs, retryMaxDelayMs, deadLetterMaxSize, retentionMs);
+        // Queue lists from before keys carried hash tags, which cluster mode never used
+        boolean untagged = legacyKeysEnabled && !"cluster".equals(redisMode);
+        verificationQueue = new ReliableEmailQueue(EMAIL_QUEUE,
+                untagged ? List.of("email:processing", "email:queue") : List.of(),
+                redisTemplate, objectMapper, meterRegistry, settings);
+        passwordResetQueue = new ReliableEmailQueue(PASSWORD_RESET_QUEUE, List.of(),
+                redisTemplate, objectMapper, meterRegistry, settings);
+        invitationQueue = new ReliableEmailQueue(INVITATION_QUEUE,
+                untagged ? List.of("invitation:queue") : List.of(),
+                redisTemplate, objectMapper, meterRegistry, settings);
+    }
 
     public void queueEmail(String toEmail, String verificationCode) {
+        queue(verificationQueue, toEmail, EmailUtil.createEmailQueueData(toEmail, verificationCode));
+    }
+
+    public void queuePasswordResetEmail(String toEmail, String resetToken) {
+        queue(passwordResetQueue, toEmail, EmailUtil.createPasswordResetQueueData(toEmail, resetToken));
+    }
+
+    public List<ReliableEmailQueue> queues() {
+        return List.of(verificationQueue, passwordResetQueue, invitationQueue);
+    }
+
+    public Optional<ReliableEmailQueue> findQueue(String name) {
+        return queues().stream().filter(queue -> queue.getName().equals(name)).findFirst();
+    }
+
+    /**
+     * Most recent dead letters of a queue, with verification codes and bodies left out.
+     */
+    public List<DeadLetterResponse> getDeadLetters(String queueName, int limit) {
+        ReliableEmailQueue queue = findQueue(queueName)
+                .orElseThrow(() -> new ResourceNotFoundException("Email queue not found: " + queueName));
+
+        return queue.deadLetters(limit).stream()
+                .map(entry -> toDeadLetterResponse(queue.getName(), entry))
+                .toList();
+    }
+
+    private void queue(ReliableEmailQueue queue, String toEmail, Map<String, String> emailData) {
         try {
-            Map<String, String> emailData = EmailUtil.createEmailQueueData(toEmail, verificationCode);
-            String emailJson = objectMapper.writeValueAsString(emailData);
-            redisTemplate.opsForList().rightPush(EMAIL_QUEUE_KEY, emailJson);
+            queue.pushAll(List.of(objectMapper.writeValueAsString(emailData)));
             EmailUtil.logEmailSuccess("Email queued successfully", toEmail);
         } catch (Exception e) {
             EmailUtil.logEmailError("Failed to queue email", toEmail, e);
@@ -30,16 +120,28 @@ public class EmailQueueService {
         }
     }
 
-    public Map<String, String> dequeueEmail() {
+    private DeadLetterResponse toDeadLetterResponse(String queueName, String entry) {
+        Map<String, String> data;
         try {
-            String emailJson = redisTemplate.opsForList().leftPop(EMAIL_QUEUE_KEY);
-            if (emailJson != null) {
-                return objectMapper.readValue(emailJson, Map.class);
-            }
-            return null;
+            data = objectMapper.readValue(entry, Map.class);
         } catch (Exception e) {
-            log.error("Failed to dequeue email", e);
-            return null;
+            return DeadLetterResponse.builder().queue(queueName).readable(false).build();
         }
+
+        return DeadLetterResponse.builder()
+                .queue(queueName)
+                .recipient(data.getOrDefault("toEmail", data.get("email")))
+                .attempts(Integer.parseInt(data.getOrDefault("attempts", "0")))
+                .lastError(data.get("lastError"))
+                .enqueuedAt(toDateTime(data.get("enqueuedAt")))
+                .failedAt(toDateTime(data.get("failedAt")))
+                .readable(true)
+                .build();
+    }
+
+    private LocalDateTime toDateTime(String epochMillis) {
+        return epochMillis == null
+                ? null
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(epochMillis)), ZoneId.systemDefault());
     }
-}
\ No newline at end of file
+}
@@ -4,18 +4,17 @@ import com.example.springrestful.entity.EmployeeInvitation;
 import com.example.springrestful.exception.EmailSendingException;
 import com.example.springrestful.exception.InvalidInvitationException;
 import com.example.springrestful.util.EmailUtil;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.springrestful.util.RedisKeys;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
@@ -32,14 +31,14 @@ import java.util.Optional;
 public class EmailService {
 
     private static final String INVITATION_CACHE_PREFIX = "invitation:";
-    private static final String INVITATION_QUEUE_KEY = "invitation:queue";
     private static final Duration INVITATION_CACHE_DURATION = Duration.ofDays(7);
 
-    private final ObjectMapper objectMapper;
-    private final PasswordEncoder passwordEncoder;
+    private final VerificationCodeHashingService verificationCodeHashingService;
     private final JavaMailSender mailSender;
     private final EmailQueueService emailQueueService;
+    private final EmailOutbox emailOutbox;
     private final TemplateEngine templateEngine;
+    private final EmailTemplateRenderer templateRenderer;
     private final RedisTemplate<String, String> redisTemplate;
 
     @Value("${spring.mail.username}")
@@ -56,7 +55,11 @@ public class EmailService {
     }
 
     public String hashVerificationCode(String plainCode) {
-        return EmailUtil.hashVerificationCode(plainCode, passwordEncoder);
+        return verificationCodeHashingService.hash(plainCode);
+    }
+
+    public boolean matchesVerificationCode(String plainCode, String storedHash) {
+        return verificationCodeHashingService.matches(plainCode, storedHash);
     }
 
     public void sendVerificationCode(String toEmail, String verificationCode) {
@@ -74,7 +77,10 @@ public class EmailService {
         }
     }
 
-    @Async
+    /**
+     * Sends a queued verification email on the calling dispatch worker. Failures are rethrown so
+     * the queue can retry or dead-letter the email.
+     */
     protected void processAndSendEmail(String toEmail, String verificationCode) {
         try {
             SimpleMailMessage message = EmailUtil.createVerificationEmail(fromEmail, toEmail, verificationCode);
@@ -83,21 +89,16 @@ public class EmailService {
 
         } catch (Exception e) {
             EmailUtil.logEmailError("Failed to send email", toEmail, e);
-            handleEmailFailure(toEmail, verificationCode);
+            throw new EmailSendingException("Failed to send email: " + e.getMessage(), e);
         }
     }
 
     public Optional<Map<Object, Object>> getInvitationData(String token) {
-        String cacheKey = INVITATION_CACHE_PREFIX + token;
+        String cacheKey = RedisKeys.tagged(INVITATION_CACHE_PREFIX, token);
         Map<Object, Object> invitationData = redisTemplate.opsForHash().entries(cacheKey);
         return invitationData.isEmpty() ? Optional.empty() : Optional.of(invitationData);
     }
 
-    private void handleEmailFailure(String toEmail, String verificationCode) {
-        log.warn("⚠️ Implementing retry logic for failed email to: {}", toEmail);
-        // Add to dead letter queue or retry queue
-    }
-
     /**
      * Sends password reset token to user's email
      */
@@ -107,6 +108,21 @@ public class EmailService {
                 throw new IllegalArgumentException("Recipient email cannot be null or empty");
             }
 
+            emailQueueService.queuePasswordResetEmail(toEmail, resetToken);
+            EmailUtil.logEmailSuccess("Password reset email queued", toEmail);
+
+        } catch (Exception e) {
+            EmailUtil.logEmailError("Failed to queue password reset email", toEmail, e);
+            throw new EmailSendingException("Failed to send password reset email", e);
+        }
+    }
+
+    /**
+     * Sends a queued password reset email on the calling dispatch worker. Failures are rethrown
+     * so the queue can retry or dead-letter the email.
+     */
+    protected void processAndSendPasswordResetEmail(String toEmail, String resetToken) {
+        try {
             SimpleMailMessage message = new SimpleMailMessage();
             message.setFrom(fromEmail);
             message.setTo(toEmail);
@@ -123,12 +139,12 @@ public class EmailService {
                     passwordResetTokenExpiryMinutes
             ));
 
-            emailQueueService.queueEmail(toEmail, resetToken);
-            EmailUtil.logEmailSuccess("Password reset email queued", toEmail);
+            mailSender.send(message);
+            EmailUtil.logEmailSuccess("Password reset email sent", toEmail);
 
         } catch (Exception e) {
-            EmailUtil.logEmailError("Failed to queue password reset email", toEmail, e);
-            throw new EmailSendingException("Failed to send password reset email", e);
+            EmailUtil.logEmailError("Failed to send password reset email", toEmail, e);
+            throw new EmailSendingException("Failed to send password reset email: " + e.getMessage(), e);
         }
     }
 
@@ -158,49 +174,52 @@ public class EmailService {
 //        }
 //    }
 
-    public void sendInvitationEmail(EmployeeInvitation invitation) {
-        try {
-            log.debug("Preparing to send invitation email to: {}", invitation.getEmail());
+    /**
+     * Records the invitation email in the outbox, within the caller's transaction. It is sent
+     * once that transaction committed, in the current request's locale.
+     */
+    public void queueInvitationEmail(EmployeeInvitation invitation) {
+        EmailTemplateRenderer.RenderedEmail email = templateRenderer.renderInvitation(
+                invitation.getOrganization(),
+                LocaleContextHolder.getLocale(),
+                generateInvitationLink(invitation.getInvitationToken()),
+                invitation.getTokenExpiry().toLocalDate());
+
+        emailOutbox.add(emailQueueService.getInvitationQueue(), invitation.getEmail(),
+                EmailUtil.createInvitationQueueData(invitation.getEmail(), email.subject(), email.html(), email.text()));
+        EmailUtil.logEmailSuccess("Invitation email recorded in the outbox", invitation.getEmail());
+    }
 
+    /**
+     * Sends a queued HTML email on the calling dispatch worker, with a plain-text alternative
+     * when one was rendered. Failures are rethrown so the queue can retry or dead-letter the email.
+     */
+    protected void processAndSendHtmlEmail(String toEmail, String subject, String htmlContent, String textContent) {
+        try {
             MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, StandardCharsets.UTF_8.name());
-
-            String emailContent = generateInvitationEmailContent(invitation);
+            MimeMessageHelper helper = new MimeMessageHelper(message, textContent != null, StandardCharsets.UTF_8.name());
 
-            helper.setTo(invitation.getEmail());
-            helper.setSubject("Invitation to join " + invitation.getOrganization().getName());
-            helper.setText(emailContent, true);
+            helper.setTo(toEmail);
+            helper.setSubject(subject);
+            if (textContent != null) {
+                helper.setText(textContent, htmlContent);
+            } else {
+                helper.setText(htmlContent, true);
+            }
             helper.setFrom(fromEmail);
 
-            log.debug("Attempting to send email...");
             mailSender.send(message);
-            log.info("✅ Invitation email sent successfully to: {}", invitation.getEmail());
+            EmailUtil.logEmailSuccess("Email sent successfully", toEmail);
 
-        } catch (MessagingException e) {
-            log.error("❌ Failed to send invitation email to: {} - Error: {}",
-                    invitation.getEmail(), e.getMessage(), e);
-            throw new EmailSendingException("Failed to send invitation email: " + e.getMessage(), e);
         } catch (Exception e) {
-            log.error("❌ Unexpected error sending invitation email to: {} - Error: {}",
-                    invitation.getEmail(), e.getMessage(), e);
-            throw new EmailSendingException("Unexpected error sending invitation email: " + e.getMessage(), e);
+            EmailUtil.logEmailError("Failed to send email", toEmail, e);
+            throw new EmailSendingException("Failed to send email: " + e.getMessage(), e);
         }
     }
 
-    private String generateInvitationEmailContent(EmployeeInvitation invitation) {
-        Context context = new Context();
-        Map<String, Object> variables = new HashMap<>();
-        variables.put("organizationName", invitation.getOrganization().getName());
-        variables.put("invitationLink", generateInvitationLink(invitation.getInvitationToken()));
-        variables.put("expiryDate", invitation.getTokenExpiry().toLocalDate().toString());
-        context.setVariables(variables);
-
-        return templateEngine.process("invitation-email", context);
-    }
-
     private void cacheInvitationData(EmployeeInvitation invitation) {
         try {
-            String cacheKey = INVITATION_CACHE_PREFIX + invitation.getInvitationToken();
+            String cacheKey = RedisKeys.tagged(INVITATION_CACHE_PREFIX, invitation.getInvitationToken());
             Map<String, String> invitationData = new HashMap<>();
             invitationData.put("email", invitation.getEmail());
             invitationData.put("organizationId", invitation.getOrganization().getId().toString());
@@ -217,17 +236,6 @@ public class EmailService {
         }
     }
 
-    private void queueInvitationEmail(String email, String content) {
-        try {
-            Map<String, String> emailData = EmailUtil.createInvitationQueueData(email, content);
-            redisTemplate.opsForList().rightPush(INVITATION_QUEUE_KEY,
-                    objectMapper.writeValueAsString(emailData));
-        } catch (Exception e) {
-            EmailUtil.logEmailError("Failed to queue invitation email", email, e);
-            throw new EmailSendingException("Failed to queue invitation email", e);
-        }
-    }
-
     private String generateInvitationLink(String token) {
         return invitationBaseUrl + "/invitations/" + token + "/accept";
     }
@@ -0,0 +1,120 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.entity.Organization;
+import com.example.springrestful.util.BoundedExpiringMap;
+import com.example.springrestful.util.CompiledEmailTemplate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Renders the HTML and plain-text parts of templated emails without running Thymeleaf per
+ * recipient.
+ * <p>
+ * A template is processed once per organization and locale, with markers in place of the
+ * per-recipient variables, and the output is compiled into static fragments. Rendering an email
+ * then only appends the escaped variables between those fragments. Compiled templates are kept
+ * for {@code cache-ttl-ms}, so template or organization changes show up after that at the latest;
+ * a renamed organization gets a new entry right away.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmailTemplateRenderer {
+
+    public record RenderedEmail(String subject, String html, String text) {
+    }
+
+    private record TemplateKey(String template, Long organizationId, String organizationName, Locale locale) {
+    }
+
+    private static final String MARKER_CLOSE = "}}";
+    private static final String INVITATION_TEMPLATE = "invitation-email";
+    private static final List<String> INVITATION_VARIABLES = List.of("invitationLink", "expiryDate");
+
+    private static final CompiledEmailTemplate INVITATION_TEXT = CompiledEmailTemplate.compile("""
+            Hello,
+
+            You have been invited to join {{organizationName}}.
+
+            Accept the invitation here:
+            {{invitationLink}}
+
+            This invitation will expire on {{expiryDate}}.
+
+            If you did not expect this invitation, please ignore this email.
+            This is an automated message, please do not reply to this email.
+            """, "{{", "}}");
+
+    private final TemplateEngine templateEngine;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.email.templates.cache-size}")
+    private int cacheSize;
+
+    @Value("${application.email.templates.cache-ttl-ms}")
+    private long cacheTtlMs;
+
+    // Random per process, so organization names cannot collide with the markers
+    private final String markerOpen = "{{" + UUID.randomUUID() + ":";
+
+    private BoundedExpiringMap<TemplateKey, CompiledEmailTemplate> compiled;
+    private Counter cacheHits;
+    private Counter cacheMisses;
+
+    @PostConstruct
+    void init() {
+        compiled = new BoundedExpiringMap<>(cacheSize);
+        cacheHits = Counter.builder("email.template.cache").tag("result", "hit").register(meterRegistry);
+        cacheMisses = Counter.builder("email.template.cache").tag("result", "miss").register(meterRegistry);
+    }
+
+    public RenderedEmail renderInvitation(Organization organization, Locale locale,
+                                          String invitationLink, LocalDate expiryDate) {
+        Map<String, String> variables = Map.of(
+                "organizationName", organization.getName(),
+                "invitationLink", invitationLink,
+                "expiryDate", expiryDate.toString());
+
+        CompiledEmailTemplate html = compiledTemplate(INVITATION_TEMPLATE, organization, locale, INVITATION_VARIABLES);
+        return new RenderedEmail(
+                "Invitation to join " + organization.getName(),
+                html.render(variables, HtmlUtils::htmlEscape),
+                INVITATION_TEXT.render(variables));
+    }
+
+    private CompiledEmailTemplate compiledTemplate(String template, Organization organization, Locale locale,
+                                                   List<String> recipientVariables) {
+        TemplateKey key = new TemplateKey(template, organization.getId(), organization.getName(), locale);
+        CompiledEmailTemplate cached = compiled.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+
+        cacheMisses.increment();
+        Context context = new Context(locale);
+        context.setVariable("organizationName", organization.getName());
+        for (String variable : recipientVariables) {
+            context.setVariable(variable, markerOpen + variable + MARKER_CLOSE);
+        }
+        CompiledEmailTemplate compiledTemplate = CompiledEmailTemplate.compile(
+                templateEngine.process(template, context), markerOpen, MARKER_CLOSE);
+        compiled.put(key, compiledTemplate, cacheTtlMs);
+        log.debug("🧩 Compiled email template {} for organization {} and locale {}", template, organization.getId(), locale);
+        return compiledTemplate;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.springrestful.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * HMAC-SHA256 keyed by a server secret. Codes only live for minutes and cannot be brute-forced
+ * offline without the key, so a slow password hash buys nothing here and costs tens of milliseconds.
+ * <p>
+ * The key must be its own secret: sharing it with {@code jwt.secret} would let a leak of either
+ * one compromise both, so startup fails when it is missing or equal to the JWT key. Only created
+ * while HMAC is the selected hasher, so deployments staying on BCrypt need no secret.
+ */
+@Component
+@ConditionalOnProperty(name = "verification.code.hasher", havingValue = "hmac", matchIfMissing = true)
+public class HmacVerificationCodeHasher implements VerificationCodeHasher {
+
+    private static final String PREFIX = "{hmac}";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    public HmacVerificationCodeHasher(@Value("${verification.code.hmac-secret}") String secret,
+                                      @Value("${jwt.secret}") String jwtSecret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("verification.code.hmac-secret must be set");
+        }
+        if (secret.equals(jwtSecret)) {
+            throw new IllegalStateException("verification.code.hmac-secret must differ from jwt.secret");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    @Override
+    public String getName() {
+        return "hmac";
+    }
+
+    @Override
+    public String hash(String plainCode) {
+        return PREFIX + Base64.getEncoder().encodeToString(mac(plainCode));
+    }
+
+    @Override
+    public boolean matches(String plainCode, String storedHash) {
+        if (plainCode == null || !supports(storedHash)) {
+            return false;
+        }
+        byte[] expected;
+        try {
+            expected = Base64.getDecoder().decode(storedHash.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // Constant-time comparison so response timing does not leak how much of the code matched
+        return MessageDigest.isEqual(expected, mac(plainCode));
+    }
+
+    @Override
+    public boolean supports(String storedHash) {
+        return storedHash != null && storedHash.startsWith(PREFIX);
+    }
+
+    private byte[] mac(String plainCode) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(plainCode.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.util.BoundedExpiringMap;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * {@link TokenStore} kept in bounded, expiring maps inside the process.
+ * <p>
+ * State is neither shared between nodes nor kept across restarts, so this store is only suitable
+ * for single-node installs, local development and benchmarks of the auth path. A restart logs
+ * everyone out. Revocations, rotation markers, generations, claims markers and resend counters
+ * are never dropped before they expire: once one of those maps holds {@code max-entries} live
+ * entries, operations that would add to it throw and the request fails. Generations are kept for
+ * the refresh token lifetime after their last use. Codes and session indexes only make room by
+ * dropping entries, which costs a resend or an incomplete session list.
+ * Tokens issued before generations were introduced are never tracked here and are rejected.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "jwt.token-store.type", havingValue = "memory")
+public class InMemoryTokenStore implements TokenStore {
+
+    @Value("${jwt.token-store.memory.max-entries}")
+    private int maxEntries;
+
+    @Value("${jwt.refresh-token.expiration}")
+    private long refreshTokenExpiration;
+
+    private BoundedExpiringMap<String, Boolean> blacklist;
+    private BoundedExpiringMap<String, String> rotated;
+    private BoundedExpiringMap<String, Long> generations;
+    private BoundedExpiringMap<String, Long> claimsStaleSince;
+    private BoundedExpiringMap<String, String> codes;
+    private BoundedExpiringMap<String, Long> verificationAttempts;
+    // Per user: refresh token id -> expires-at millis
+    private BoundedExpiringMap<String, Map<String, Long>> sessions;
+
+    @PostConstruct
+    void init() {
+        blacklist = new BoundedExpiringMap<>(maxEntries, false);
+        rotated = new BoundedExpiringMap<>(maxEntries, false);
+        generations = new BoundedExpiringMap<>(maxEntries, false);
+        claimsStaleSince = new BoundedExpiringMap<>(maxEntries, false);
+        verificationAttempts = new BoundedExpiringMap<>(maxEntries, false);
+        codes = new BoundedExpiringMap<>(maxEntries);
+        sessions = new BoundedExpiringMap<>(maxEntries);
+        log.warn("⚠️ Using the in-memory token store: auth state is local to this node and lost on restart");
+    }
+
+    @Override
+    public StoredTokenState loadTokenState(ParsedToken token) {
+        return new StoredTokenState(isBlacklisted(token), loadUserState(token.getSubject()), false);
+    }
+
+    @Override
+    public UserTokenState loadUserState(String username) {
+        Long generation = generations.get(username);
+        Long staleSince = claimsStaleSince.get(username);
+        return new UserTokenState(generation == null ? 0 : generation, staleSince == null ? 0 : staleSince);
+    }
+
+    @Override
+    public boolean isBlacklisted(ParsedToken token) {
+        return blacklist.containsKey(token.getFingerprint());
+    }
+
+    @Override
+    public void revokeToken(ParsedToken token) {
+        long remainingTtl = token.getRemainingTtlMillis();
+        if (remainingTtl > 0) {
+            blacklist.put(token.getFingerprint(), Boolean.TRUE, remainingTtl);
+        }
+        if (token.isRefreshToken() && !token.isLegacy()) {
+            removeSession(token.getSubject(), token.getFingerprint());
+        }
+    }
+
+    @Override
+    public synchronized RefreshRotation rotateRefreshToken(ParsedToken token, String successorTokenId,
+                                                           long successorExpiresAt) {
+        String username = token.getSubject();
+        long remainingTtl = Math.max(token.getRemainingTtlMillis(), 1);
+
+        if (rotated.containsKey(token.getFingerprint())) {
+            return new RefreshRotation(RefreshRotation.Outcome.REUSED, advanceGeneration(username), false);
+        }
+
+        UserTokenState userState = loadUserState(username);
+        if (blacklist.containsKey(token.getFingerprint())) {
+            return new RefreshRotation(RefreshRotation.Outcome.REVOKED, userState.getGeneration(), false);
+        }
+        if (token.getGeneration() == null || token.getGeneration() != userState.getGeneration()) {
+            return new RefreshRotation(RefreshRotation.Outcome.STALE_GENERATION, userState.getGeneration(), false);
+        }
+
+        rotated.put(token.getFingerprint(), successorTokenId, remainingTtl);
+        blacklist.put(token.getFingerprint(), Boolean.TRUE, remainingTtl);
+        removeSession(username, token.getFingerprint());
+        recordSession(username, successorTokenId, successorExpiresAt);
+        return new RefreshRotation(RefreshRotation.Outcome.ROTATED, userState.getGeneration(),
+                userState.areClaimsStale(token));
+    }
+
+    @Override
+    public void markClaimsStale(String username, long ttlMillis) {
+        claimsStaleSince.put(username, System.currentTimeMillis(), ttlMillis);
+    }
+
+    @Override
+    public synchronized long advanceGeneration(String username) {
+        sessions.remove(username);
+        // Generations only need to outlive the refresh tokens issued under them
+        return generations.update(username, current -> current == null ? 1 : current + 1,
+                refreshTokenExpiration, true);
+    }
+
+    @Override
+    public synchronized void recordSession(String username, String tokenId, long expiresAt) {
+        long now = System.currentTimeMillis();
+        // The refresh token was issued under the current generation, which must outlive it
+        generations.update(username, current -> current == null ? 0L : current,
+                Math.max(expiresAt - now, refreshTokenExpiration), true);
+        Map<String, Long> live = liveSessions(username, now);
+        live.put(tokenId, expiresAt);
+        long lastExpiry = live.values().stream().mapToLong(Long::longValue).max().orElse(expiresAt);
+        sessions.put(username, live, Math.max(lastExpiry - now, 1));
+    }
+
+    @Override
+    public synchronized List<ActiveSession> listActiveSessions(String username) {
+        return liveSessions(username, System.currentTimeMillis()).entrySet().stream()
+                .map(session -> new ActiveSession(session.getKey(), session.getValue()))
+                .sorted(Comparator.comparingLong(ActiveSession::getExpiresAt))
+                .toList();
+    }
+
+    @Override
+    public synchronized long countActiveSessions(String username) {
+        return liveSessions(username, System.currentTimeMillis()).size();
+    }
+
+    @Override
+    public void saveCode(CodePurpose purpose, String email, String hashedCode, Duration ttl) {
+        codes.put(codeKey(purpose, email), hashedCode, ttl.toMillis());
+    }
+
+    @Override
+    public Optional<String> findCode(CodePurpose purpose, String email) {
+        return Optional.ofNullable(codes.get(codeKey(purpose, email)));
+    }
+
+    @Override
+    public void deleteCode(CodePurpose purpose, String email) {
+        codes.remove(codeKey(purpose, email));
+    }
+
+    @Override
+    public long incrementVerificationAttempts(String email, Duration window) {
+        return verificationAttempts.update(email, current -> current == null ? 1 : current + 1,
+                window.toMillis(), false);
+    }
+
+    @Override
+    public void clearVerificationAttempts(String email) {
+        verificationAttempts.remove(email);
+    }
+
+    private synchronized void removeSession(String username, String tokenId) {
+        Map<String, Long> current = sessions.get(username);
+        if (current != null) {
+            current.remove(tokenId);
+        }
+    }
+
+    // Copy of the user's sessions without the expired ones
+    private Map<String, Long> liveSessions(String username, long now) {
+        Map<String, Long> live = new HashMap<>();
+        Map<String, Long> current = sessions.get(username);
+        if (current != null) {
+            current.forEach((tokenId, expiresAt) -> {
+                if (expiresAt > now) {
+                    live.put(tokenId, expiresAt);
+                }
+            });
+        }
+        return live;
+    }
+
+    private String codeKey(CodePurpose purpose, String email) {
+        return purpose.name() + ":" + email;
+    }
+}
@@ -1,11 +1,16 @@
 package com.example.springrestful.security;
 
+import com.example.springrestful.service.impl.CustomUserDetailsImpl;
 import com.example.springrestful.util.JwtUtil;
+import com.example.springrestful.util.RedisOperationCounter;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -18,12 +23,23 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 @Component
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final TokenStateCircuitBreaker tokenStateCircuitBreaker;
+
+    @Value("${jwt.claims-principal.enabled}")
+    private boolean claimsPrincipalEnabled;
+
+    @Value("${jwt.redis.expose-operation-count:false}")
+    private boolean exposeRedisOperationCount;
+
+    public static final String REDIS_OPS_ATTRIBUTE = "auth.redisOperations";
+    private static final String REDIS_OPS_HEADER = "X-Auth-Redis-Ops";
 
     private static final List<String> PUBLIC_PATHS = Arrays.asList(
             "/api/v1/auth/login",
@@ -31,7 +47,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             "/api/v1/auth/verify-email",
             "/api/v1/auth/forgot-password",
             "/api/v1/auth/reset-password",
-            "/api/v1/auth/resend-verification"
+            "/api/v1/auth/resend-verification",
+            // Authenticates the refresh token it is called with itself
+            "/api/v1/auth/refresh-token"
     );
 
     @Override
@@ -40,6 +58,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             @NonNull HttpServletResponse response,
             @NonNull FilterChain filterChain
     ) throws ServletException, IOException {
+        RedisOperationCounter.reset();
         try {
             if (shouldSkipAuthentication(request)) {
                 filterChain.doFilter(request, response);
@@ -50,20 +69,50 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             final String jwt = jwtUtil.extractTokenFromRequest(request);
 
             if (jwt != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                // Check if token is blacklisted
-                if (jwtUtil.isTokenBlacklisted(jwt)) {
-                    logger.warn("Attempted to use blacklisted token");
+                // Verify the signature once and reuse the parsed view for every check below
+                final ParsedToken parsedToken;
+                try {
+                    parsedToken = jwtUtil.parseToken(jwt);
+                } catch (JwtException e) {
+                    logger.warn("Rejected invalid or expired token: " + e.getMessage());
                     jwtUtil.clearAuthenticationCookies(response);
                     response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
                     return;
                 }
 
-                final String username = jwtUtil.extractUsername(jwt);
+                // Refresh tokens carry the principal claims as well, but are only good for the refresh endpoint
+                if (parsedToken.isRefreshToken()) {
+                    logger.warn("Rejected a refresh token presented as an access token");
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    return;
+                }
+
+                final String username = parsedToken.getSubject();
 
                 if (username != null) {
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                    // Blacklist, session membership and claims staleness in a single Redis round trip
+                    Optional<TokenState> lookup = tokenStateCircuitBreaker.lookup(parsedToken);
+
+                    if (lookup.isEmpty()) {
+                        // Revocation state is unknown: refuse without clearing cookies so the client can retry
+                        logger.warn("Token state unavailable, refusing request to " + request.getRequestURI());
+                        response.setHeader(HttpHeaders.RETRY_AFTER,
+                                String.valueOf(tokenStateCircuitBreaker.getRetryAfterSeconds()));
+                        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                        return;
+                    }
 
-                    if (jwtUtil.validateToken(jwt, userDetails)) {
+                    TokenState tokenState = lookup.get();
+                    if (!tokenState.isValid()) {
+                        logger.warn("Attempted to use a revoked or unknown token");
+                        jwtUtil.clearAuthenticationCookies(response);
+                        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                        return;
+                    }
+
+                    UserDetails userDetails = resolvePrincipal(parsedToken, tokenState);
+
+                    if (username.equals(userDetails.getUsername())) {
                         UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                                 userDetails,
                                 null,
@@ -85,9 +134,40 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
+        recordRedisOperations(request, response);
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * Exposes how many Redis round trips authentication cost for this request.
+     */
+    private void recordRedisOperations(HttpServletRequest request, HttpServletResponse response) {
+        int operations = RedisOperationCounter.get();
+        request.setAttribute(REDIS_OPS_ATTRIBUTE, operations);
+        if (exposeRedisOperationCount) {
+            response.setHeader(REDIS_OPS_HEADER, String.valueOf(operations));
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Authentication used " + operations + " Redis operation(s) for " + request.getRequestURI());
+        }
+    }
+
+    /**
+     * Builds the principal straight from the verified claims when possible and only falls back
+     * to the database for tokens without principal claims or whose claims were marked stale.
+     */
+    private UserDetails resolvePrincipal(ParsedToken parsedToken, TokenState tokenState) {
+        if (claimsPrincipalEnabled && parsedToken.hasPrincipalClaims() && !tokenState.isClaimsStale()) {
+            return new CustomUserDetailsImpl(
+                    parsedToken.getUserId(),
+                    parsedToken.getSubject(),
+                    parsedToken.getEmailVerified(),
+                    parsedToken.getRoles()
+            );
+        }
+        return userDetailsService.loadUserByUsername(parsedToken.getSubject());
+    }
+
     private boolean shouldSkipAuthentication(HttpServletRequest request) {
         String path = request.getRequestURI();
         return PUBLIC_PATHS.stream().anyMatch(path::contains);
@@ -0,0 +1,132 @@
+package com.example.springrestful.security;
+
+import io.jsonwebtoken.Claims;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Immutable view of a JWT whose signature has already been verified.
+ * <p>
+ * Built once per request by {@link com.example.springrestful.util.JwtUtil#parseToken(String)}
+ * and passed along, so the filter and the refresh flow never parse the same token twice.
+ */
+@Getter
+public final class ParsedToken {
+
+    public static final String TOKEN_TYPE_CLAIM = "tokenType";
+    public static final String REFRESH_TOKEN_TYPE = "refresh";
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String ROLES_CLAIM = "roles";
+    public static final String EMAIL_VERIFIED_CLAIM = "ev";
+    public static final String GENERATION_CLAIM = "gen";
+
+    private final String token;
+    private final String subject;
+    private final String id;
+    private final String tokenType;
+    private final Date issuedAt;
+    private final Date expiration;
+
+    // Per-user generation the token was issued under; null for tokens tracked in the legacy session sets
+    private final Long generation;
+
+    // Principal claims; absent on tokens issued before they were introduced
+    private final Long userId;
+    private final List<String> roles;
+    private final Boolean emailVerified;
+
+    private ParsedToken(String token, Claims claims) {
+        this.token = token;
+        this.subject = claims.getSubject();
+        this.id = claims.getId();
+        this.tokenType = claims.get(TOKEN_TYPE_CLAIM, String.class);
+        this.issuedAt = claims.getIssuedAt();
+        this.expiration = claims.getExpiration();
+
+        Number gen = claims.get(GENERATION_CLAIM, Number.class);
+        this.generation = gen == null ? null : gen.longValue();
+
+        Number uid = claims.get(USER_ID_CLAIM, Number.class);
+        this.userId = uid == null ? null : uid.longValue();
+        List<?> roleClaim = claims.get(ROLES_CLAIM, List.class);
+        this.roles = roleClaim == null
+                ? null
+                : roleClaim.stream().map(String::valueOf).toList();
+        this.emailVerified = claims.get(EMAIL_VERIFIED_CLAIM, Boolean.class);
+    }
+
+    public static ParsedToken of(String token, Claims claims) {
+        return new ParsedToken(token, claims);
+    }
+
+    public List<String> getRoles() {
+        return roles == null ? Collections.emptyList() : roles;
+    }
+
+    /**
+     * True when the token carries everything needed to build the principal without a database lookup.
+     */
+    public boolean hasPrincipalClaims() {
+        return userId != null && roles != null && emailVerified != null;
+    }
+
+    /**
+     * Fixed-size identifier used for session and revocation keys in Redis.
+     * <p>
+     * Tokens carry a compact random {@code jti}, which is used as is. Tokens issued before
+     * the {@code jti} was introduced are still stored under their full value, so for those
+     * the whole token is returned to keep them working until they expire.
+     */
+    public String getFingerprint() {
+        return isLegacy() ? token : id;
+    }
+
+    /**
+     * 64-bit form of the fingerprint used by the local revocation replica: the leading bytes of
+     * the decoded {@code jti}, or of a SHA-256 digest of the token for legacy tokens. Never 0.
+     */
+    public long getFingerprint64() {
+        byte[] bytes;
+        if (isLegacy()) {
+            try {
+                bytes = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        } else {
+            bytes = Base64.getUrlDecoder().decode(id);
+        }
+        long value = bytes.length >= Long.BYTES ? ByteBuffer.wrap(bytes).getLong() : id.hashCode();
+        return value == 0 ? 1 : value;
+    }
+
+    /**
+     * True for tokens issued before token ids were introduced.
+     */
+    public boolean isLegacy() {
+        return id == null;
+    }
+
+    public boolean isRefreshToken() {
+        return REFRESH_TOKEN_TYPE.equals(tokenType);
+    }
+
+    public boolean isExpired() {
+        return expiration != null && expiration.before(new Date());
+    }
+
+    public long getRemainingTtlMillis() {
+        if (expiration == null) {
+            return 0;
+        }
+        return Math.max(expiration.getTime() - System.currentTimeMillis(), 0);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.exception.PasswordHashingBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dedicated, size-bounded pool for password hashing and matching.
+ * <p>
+ * Keeps CPU-heavy BCrypt work off the Tomcat request pool's critical path: at most
+ * {@code pool-size} hashes run at once and at most {@code queue-capacity} wait. Anything beyond
+ * that, or anything that waits longer than {@code wait-timeout-ms} for a worker, fails fast with
+ * {@link PasswordHashingBusyException}, which is answered with a 503 and a Retry-After header.
+ * A hash that has started is always waited for: BCrypt cannot be interrupted, so giving up on it
+ * would only burn the CPU for nothing.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PasswordHashingExecutor {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${security.password-hashing.pool-size:0}")
+    private int poolSize;
+
+    @Value("${security.password-hashing.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${security.password-hashing.wait-timeout-ms}")
+    private long waitTimeoutMs;
+
+    @Value("${security.password-hashing.retry-after-seconds}")
+    private long retryAfterSeconds;
+
+    private ThreadPoolExecutor executor;
+    private Counter rejections;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void start() {
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        Gauge.builder("auth.password.hashing.queue.depth", executor, e -> e.getQueue().size())
+                .description("Password hashing tasks waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashing tasks currently running")
+                .register(meterRegistry);
+        rejections = Counter.builder("auth.password.hashing.rejected")
+                .description("Password hashing requests rejected because the pool was saturated")
+                .register(meterRegistry);
+
+        log.info("🔐 Password hashing pool started with {} threads and queue capacity {}", threads, queueCapacity);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Runs the hashing task on the pool and waits for its result.
+     *
+     * @param operation metric tag describing the work, e.g. {@code encode} or {@code matches}
+     */
+    public <T> T execute(String operation, Callable<T> task) {
+        Timer timer = timers.computeIfAbsent(operation, op -> Timer.builder("auth.password.hashing.duration")
+                .description("Time spent hashing or matching a password, excluding queueing")
+                .tag("operation", op)
+                .register(meterRegistry));
+
+        HashingTask<T> hashingTask = new HashingTask<>(() -> timer.recordCallable(task));
+        Future<T> future;
+        try {
+            future = executor.submit(hashingTask);
+        } catch (RejectedExecutionException e) {
+            throw busy();
+        }
+
+        try {
+            try {
+                return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (hashingTask.abandon()) {
+                    // Still waiting for a worker: free its queue slot
+                    executor.remove((Runnable) future);
+                    throw busy();
+                }
+                return future.get();
+            }
+        } catch (InterruptedException e) {
+            hashingTask.abandon();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed", cause);
+        }
+    }
+
+    /**
+     * Runs the hash unless the caller gave up on it while it was queued.
+     */
+    private static final class HashingTask<T> implements Callable<T> {
+
+        private final Callable<T> task;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private HashingTask(Callable<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public T call() throws Exception {
+            return claimed.compareAndSet(false, true) ? task.call() : null;
+        }
+
+        // True when the task had not started and now never will
+        boolean abandon() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    private PasswordHashingBusyException busy() {
+        rejections.increment();
+        log.warn("🚦 Password hashing pool saturated, rejecting request");
+        return new PasswordHashingBusyException(
+                "The service is busy. Please try again shortly.",
+                retryAfterSeconds
+        );
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.springrestful.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link JavaMailSenderImpl} that keeps up to {@code poolSize} authenticated SMTP connections open
+ * and sends through them, instead of connecting, running STARTTLS and authenticating for every
+ * send.
+ * <p>
+ * A connection serves one send at a time and is handed out most recently used first, so the
+ * connections a quiet period does not need go idle. A scheduled sweep closes connections idle for
+ * more than {@code maxIdleMs}, before the server drops them on its side, and a connection idle for
+ * more than {@code validateAfterIdleMs} is checked with a NOOP before reuse.
+ * Connections are closed after {@code maxMessagesPerConnection} messages, since servers cap
+ * messages per session, and after any failed send, since the session state is then unknown.
+ * Failed sends are not retried here; the email queues retry them.
+ */
+@Slf4j
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+
+    private static final class PooledTransport {
+        private final Transport transport;
+        private int messagesSent;
+        private long lastUsedAt = System.currentTimeMillis();
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+
+    private final int maxMessagesPerConnection;
+    private final long maxIdleMs;
+    private final long validateAfterIdleMs;
+    private final long borrowTimeoutMs;
+
+    private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private final Semaphore connections;
+    private final AtomicInteger open = new AtomicInteger();
+
+    private final Timer connectTimer;
+    private final Timer sendTimer;
+    private final Counter recycledAfterMaxMessages;
+    private final Counter recycledAfterError;
+    private final Counter recycledAfterIdle;
+
+    public PooledJavaMailSender(int poolSize,
+                                int maxMessagesPerConnection,
+                                long maxIdleMs,
+                                long validateAfterIdleMs,
+                                long borrowTimeoutMs,
+                                MeterRegistry meterRegistry) {
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.maxIdleMs = maxIdleMs;
+        this.validateAfterIdleMs = validateAfterIdleMs;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.connections = new Semaphore(poolSize);
+
+        Gauge.builder("email.smtp.connections", open, AtomicInteger::get)
+                .tag("state", "open")
+                .register(meterRegistry);
+        Gauge.builder("email.smtp.connections", idle, LinkedBlockingDeque::size)
+                .tag("state", "idle")
+                .register(meterRegistry);
+        connectTimer = Timer.builder("email.smtp.connect.duration")
+                .description("Time spent connecting, running STARTTLS and authenticating")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        sendTimer = Timer.builder("email.smtp.send.duration")
+                .description("Time spent sending one message over an open connection")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        recycledAfterMaxMessages = recycledCounter(meterRegistry, "max_messages");
+        recycledAfterError = recycledCounter(meterRegistry, "error");
+        recycledAfterIdle = recycledCounter(meterRegistry, "idle");
+    }
+
+    /**
+     * Sends all messages of one call over a single pooled connection.
+     */
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) throws MailException {
+        PooledTransport pooled = borrow();
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                Object original = (originalMessages != null ? originalMessages[i] : mimeMessages[i]);
+                if (pooled == null || pooled.messagesSent >= maxMessagesPerConnection) {
+                    if (pooled != null) {
+                        recycledAfterMaxMessages.increment();
+                        close(pooled);
+                        pooled = null;
+                    }
+                    try {
+                        pooled = new PooledTransport(connect());
+                    } catch (MailException e) {
+                        // The server is unreachable, so the rest of the batch fails as well
+                        for (int j = i; j < mimeMessages.length; j++) {
+                            failedMessages.put(originalMessages != null ? originalMessages[j] : mimeMessages[j], e);
+                        }
+                        break;
+                    }
+                }
+
+                try {
+                    send(pooled, mimeMessages[i]);
+                } catch (Exception e) {
+                    recycledAfterError.increment();
+                    close(pooled);
+                    pooled = null;
+                    failedMessages.put(original, e);
+                }
+            }
+        } finally {
+            giveBack(pooled);
+        }
+
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    /**
+     * Closes connections that sat in the pool for more than {@code maxIdleMs}, least recently used
+     * first. Runs every {@code max-idle-ms}, so a connection stays open at most twice that long.
+     */
+    @Scheduled(fixedDelayString = "${application.email.smtp.max-idle-ms}",
+            initialDelayString = "${application.email.smtp.max-idle-ms}")
+    public void closeIdleConnections() {
+        PooledTransport oldest;
+        while ((oldest = idle.peekLast()) != null && System.currentTimeMillis() - oldest.lastUsedAt > maxIdleMs) {
+            // A send may have borrowed it in the meantime
+            if (idle.removeLastOccurrence(oldest)) {
+                recycledAfterIdle.increment();
+                close(oldest);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            close(pooled);
+        }
+    }
+
+    private void send(PooledTransport pooled, MimeMessage mimeMessage) throws MessagingException {
+        if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+        }
+        String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if (messageId != null) {
+            // Preserve an explicitly specified message id
+            mimeMessage.setHeader("Message-ID", messageId);
+        }
+        Address[] addresses = mimeMessage.getAllRecipients();
+
+        long start = System.nanoTime();
+        pooled.transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+        sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        pooled.messagesSent++;
+        pooled.lastUsedAt = System.currentTimeMillis();
+    }
+
+    private PooledTransport borrow() {
+        try {
+            if (!connections.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new MailSendException("No SMTP connection available within " + borrowTimeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailSendException("Interrupted while waiting for an SMTP connection", e);
+        }
+
+        try {
+            PooledTransport pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isReusable(pooled)) {
+                    return pooled;
+                }
+                recycledAfterIdle.increment();
+                close(pooled);
+            }
+            return new PooledTransport(connect());
+        } catch (RuntimeException e) {
+            connections.release();
+            throw e;
+        }
+    }
+
+    private boolean isReusable(PooledTransport pooled) {
+        long idleFor = System.currentTimeMillis() - pooled.lastUsedAt;
+        if (idleFor > maxIdleMs) {
+            return false;
+        }
+        // isConnected() costs a NOOP round trip, so only connections idle for a while are checked
+        return idleFor <= validateAfterIdleMs || pooled.transport.isConnected();
+    }
+
+    // A null connection was closed after an error and only its slot is given back
+    private void giveBack(PooledTransport pooled) {
+        if (pooled != null) {
+            if (pooled.messagesSent < maxMessagesPerConnection) {
+                idle.offerFirst(pooled);
+            } else {
+                recycledAfterMaxMessages.increment();
+                close(pooled);
+            }
+        }
+        connections.release();
+    }
+
+    private Transport connect() {
+        long start = System.nanoTime();
+        try {
+            Transport transport = connectTransport();
+            open.incrementAndGet();
+            return transport;
+        } catch (AuthenticationFailedException e) {
+            throw new MailAuthenticationException(e);
+        } catch (Exception e) {
+            throw new MailSendException("Mail server connection failed", e);
+        } finally {
+            connectTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void close(PooledTransport pooled) {
+        open.decrementAndGet();
+        try {
+            pooled.transport.close();
+        } catch (Exception e) {
+            log.debug("Failed to close SMTP connection: {}", e.getMessage());
+        }
+    }
+
+    private Counter recycledCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("email.smtp.connections.recycled")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,528 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.util.RedisKeys;
+import com.example.springrestful.util.RedisNearCache;
+import com.example.springrestful.util.RedisOperationCounter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * {@link TokenStore} shared by all nodes through Redis.
+ * <p>
+ * Every operation is a single script or command. Writes that affect cached state publish on the
+ * token state and revoked tokens channels, which keep {@link TokenGenerationCache} and
+ * {@link RevokedTokenReplica} on every node up to date; blacklist checks are answered by the
+ * replica once it is seeded. Plain reads go to the primary node even when other reads are served
+ * by replicas.
+ * <p>
+ * With {@code redis.legacy-keys.enabled}, state written under the key names used before keys
+ * carried hash tags is honoured as well, so tokens retired under the old names stay retired: the
+ * scripts read the old keys next to the new ones in the same round trip, use the newer generation
+ * and claims-stale marker of the two, and advance the generation past the old one. Codes and resend
+ * counts are read under the old names as a fallback.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "jwt.token-store.type", havingValue = "redis", matchIfMissing = true)
+public class RedisTokenStore implements TokenStore {
+
+    private static final String VERIFICATION_CODE_PREFIX = "verification:";
+    private static final String VERIFICATION_ATTEMPTS_PREFIX = "verification_attempts:";
+    private static final String PASSWORD_RESET_TOKEN_PREFIX = "password_reset:";
+
+    // Newer of a value and the one kept under the old key name, for scripts reading both. The old
+    // names predate Cluster support, so they are only passed in on single-slot deployments.
+    private static final String NEWEST_FUNCTION = """
+            local function newest(value, legacy)
+                if legacy and tonumber(legacy) > tonumber(value or '0') then
+                    return legacy
+                end
+                return value
+            end
+            """;
+
+    // Resolves the blacklist entry, the user's generation and claims-stale marker and, for tokens
+    // without a generation claim, legacy session set membership in a single round trip.
+    // KEYS: blacklist, generation, claims-stale[, old blacklist, old generation, old claims-stale][, session sets].
+    // ARGV: token fingerprint, '1' when the old keys are passed.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TOKEN_STATE_SCRIPT = new DefaultRedisScript<>(NEWEST_FUNCTION + """
+            local blacklisted = redis.call('EXISTS', KEYS[1])
+            local generation = redis.call('GET', KEYS[2])
+            local staleSince = redis.call('GET', KEYS[3])
+            local sessions = 4
+            if ARGV[2] == '1' then
+                blacklisted = math.max(blacklisted, redis.call('EXISTS', KEYS[4]))
+                generation = newest(generation, redis.call('GET', KEYS[5]))
+                staleSince = newest(staleSince, redis.call('GET', KEYS[6]))
+                sessions = 7
+            end
+            local member = 1
+            if KEYS[sessions] then
+                member = 0
+                for i = sessions, #KEYS do
+                    member = math.max(member, redis.call('SISMEMBER', KEYS[i], ARGV[1]))
+                end
+            end
+            return {tostring(blacklisted), generation or '0', staleSince or '', tostring(member)}
+            """, List.class);
+
+    // KEYS: generation, claims-stale[, old generation, old claims-stale]
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> USER_STATE_SCRIPT = new DefaultRedisScript<>(NEWEST_FUNCTION + """
+            local generation = redis.call('GET', KEYS[1])
+            local staleSince = redis.call('GET', KEYS[2])
+            if KEYS[3] then
+                generation = newest(generation, redis.call('GET', KEYS[3]))
+                staleSince = newest(staleSince, redis.call('GET', KEYS[4]))
+            end
+            return {generation or '0', staleSince or ''}
+            """, List.class);
+
+    // Retires every token of a user and tells all nodes to drop their cached state. The new
+    // generation also exceeds the one kept under the old key name.
+    // KEYS: generation[, old generation], session index, session sets. ARGV: channel, username, '1' when the old generation is passed.
+    private static final RedisScript<Long> REVOKE_ALL_SCRIPT = new DefaultRedisScript<>("""
+            local generation = redis.call('INCR', KEYS[1])
+            local sessions = 2
+            if ARGV[3] == '1' then
+                local legacy = tonumber(redis.call('GET', KEYS[2]) or '0')
+                if legacy >= generation then
+                    generation = legacy + 1
+                    redis.call('SET', KEYS[1], generation)
+                end
+                sessions = 3
+            end
+            redis.call('DEL', unpack(KEYS, sessions))
+            redis.call('PUBLISH', ARGV[1], ARGV[2])
+            return generation
+            """, Long.class);
+
+    // KEYS: claims-stale. ARGV: now, ttl millis, channel, username.
+    private static final RedisScript<Long> MARK_STALE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+            redis.call('PUBLISH', ARGV[3], ARGV[4])
+            return 1
+            """, Long.class);
+
+    // Blacklists one token, drops its session and notifies the node replicas. The revocation index
+    // is global, so it lives in another cluster slot and is written separately.
+    // KEYS: blacklist, session index[, legacy session sets].
+    // ARGV: ttl millis, expires-at millis, 64-bit fingerprint, channel, token fingerprint.
+    private static final RedisScript<Long> REVOKE_TOKEN_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('SET', KEYS[1], 'true', 'PX', ARGV[1])
+            redis.call('ZREM', KEYS[2], ARGV[5])
+            for i = 3, #KEYS do
+                redis.call('SREM', KEYS[i], ARGV[5])
+            end
+            redis.call('PUBLISH', ARGV[4], ARGV[3] .. ':' .. ARGV[2])
+            return 1
+            """, Long.class);
+
+    // Retires a refresh token and registers its successor atomically, detecting replays of a
+    // token that was already rotated; a replay revokes the whole session family.
+    // All keys share the user's hash tag; the retired token is added to the revocation index beforehand.
+    // KEYS: generation, rotated marker, blacklist, claims-stale, session index
+    //       [, old generation, old rotated marker, old blacklist, old claims-stale].
+    // ARGV: token generation, ttl millis, expires-at millis, 64-bit fingerprint, revoked channel,
+    //       successor token id, token state channel, username, token id, now, successor expires-at.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ROTATE_REFRESH_SCRIPT = new DefaultRedisScript<>(NEWEST_FUNCTION + """
+            local legacy = KEYS[6] ~= nil
+            if redis.call('EXISTS', KEYS[2]) == 1 or legacy and redis.call('EXISTS', KEYS[7]) == 1 then
+                local generation = redis.call('INCR', KEYS[1])
+                if legacy and tonumber(redis.call('GET', KEYS[6]) or '0') >= generation then
+                    generation = tonumber(redis.call('GET', KEYS[6])) + 1
+                    redis.call('SET', KEYS[1], generation)
+                end
+                redis.call('DEL', KEYS[5])
+                redis.call('PUBLISH', ARGV[7], ARGV[8])
+                return {'REUSED', tostring(generation), ''}
+            end
+            local current = newest(redis.call('GET', KEYS[1]), legacy and redis.call('GET', KEYS[6])) or '0'
+            if redis.call('EXISTS', KEYS[3]) == 1 or legacy and redis.call('EXISTS', KEYS[8]) == 1 then
+                return {'REVOKED', current, ''}
+            end
+            if current ~= ARGV[1] then
+                return {'STALE_GENERATION', current, ''}
+            end
+            redis.call('SET', KEYS[2], ARGV[6], 'PX', ARGV[2])
+            redis.call('SET', KEYS[3], 'true', 'PX', ARGV[2])
+            redis.call('PUBLISH', ARGV[5], ARGV[4] .. ':' .. ARGV[3])
+            redis.call('ZREM', KEYS[5], ARGV[9])
+            redis.call('ZREMRANGEBYSCORE', KEYS[5], '-inf', ARGV[10])
+            redis.call('ZADD', KEYS[5], ARGV[11], ARGV[6])
+            local last = redis.call('ZRANGE', KEYS[5], -1, -1, 'WITHSCORES')
+            redis.call('PEXPIREAT', KEYS[5], last[2])
+            local staleSince = newest(redis.call('GET', KEYS[4]), legacy and redis.call('GET', KEYS[9]))
+            return {'ROTATED', current, staleSince or ''}
+            """, List.class);
+
+    // Adds a session to the user's index scored by expiry, prunes expired ones on the way and lets
+    // the key expire together with its last session, so memory follows live sessions only.
+    // KEYS: session index. ARGV: now, token id, expires-at millis.
+    private static final RedisScript<Long> RECORD_SESSION_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[1])
+            redis.call('ZADD', KEYS[1], ARGV[3], ARGV[2])
+            local last = redis.call('ZRANGE', KEYS[1], -1, -1, 'WITHSCORES')
+            redis.call('PEXPIREAT', KEYS[1], last[2])
+            return redis.call('ZCARD', KEYS[1])
+            """, Long.class);
+
+    @Qualifier("authRedisTemplate")
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisNearCache redisNearCache;
+    private final RevokedTokenReplica revokedTokenReplica;
+
+    @Value("${jwt.redis.prefix.blacklist}")
+    private String blacklistPrefix;
+
+    @Value("${jwt.redis.prefix.user-sessions}")
+    private String userSessionsPrefix;
+
+    @Value("${jwt.redis.prefix.claims-stale}")
+    private String claimsStalePrefix;
+
+    @Value("${jwt.redis.prefix.token-generation}")
+    private String tokenGenerationPrefix;
+
+    @Value("${jwt.redis.prefix.session-index}")
+    private String sessionIndexPrefix;
+
+    @Value("${jwt.redis.prefix.refresh-rotated}")
+    private String refreshRotatedPrefix;
+
+    @Value("${jwt.redis.revoked-index-key}")
+    private String revokedIndexKey;
+
+    @Value("${jwt.redis.channel.token-state}")
+    private String tokenStateChannel;
+
+    @Value("${jwt.redis.channel.revoked-tokens}")
+    private String revokedTokensChannel;
+
+    @Value("${redis.legacy-keys.enabled}")
+    private boolean legacyKeysEnabled;
+
+    @Value("${spring.data.redis.mode:standalone}")
+    private String redisMode;
+
+    @Override
+    public StoredTokenState loadTokenState(ParsedToken token) {
+        String username = token.getSubject();
+        List<String> keys = new ArrayList<>(List.of(blacklistKey(token), generationKey(username), claimsStaleKey(username)));
+        if (readsLegacyKeys()) {
+            keys.addAll(List.of(legacyKey(blacklistPrefix, token.getFingerprint()),
+                    legacyKey(tokenGenerationPrefix, username), legacyKey(claimsStalePrefix, username)));
+        }
+        if (token.getGeneration() == null) {
+            keys.addAll(userSessionsKeys(username));
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object> result = redisTemplate.execute(TOKEN_STATE_SCRIPT, keys, token.getFingerprint(),
+                readsLegacyKeys() ? "1" : "0");
+        RedisOperationCounter.increment();
+
+        if (result == null || result.size() < 4) {
+            throw new IllegalStateException("Unexpected token state script result: " + result);
+        }
+
+        return new StoredTokenState(
+                "1".equals(String.valueOf(result.get(0))),
+                toUserTokenState(result.get(1), result.get(2)),
+                "1".equals(String.valueOf(result.get(3)))
+        );
+    }
+
+    @Override
+    public UserTokenState loadUserState(String username) {
+        List<String> keys = readsLegacyKeys()
+                ? List.of(generationKey(username), claimsStaleKey(username),
+                        legacyKey(tokenGenerationPrefix, username), legacyKey(claimsStalePrefix, username))
+                : List.of(generationKey(username), claimsStaleKey(username));
+        @SuppressWarnings("unchecked")
+        List<Object> result = redisTemplate.execute(USER_STATE_SCRIPT, keys);
+        RedisOperationCounter.increment();
+
+        if (result == null || result.size() < 2) {
+            throw new IllegalStateException("Unexpected user state script result: " + result);
+        }
+        return toUserTokenState(result.get(0), result.get(1));
+    }
+
+    @Override
+    public boolean isBlacklisted(ParsedToken token) {
+        // Served from the local replica once it is seeded; legacy tokens are only tracked in Redis
+        if (!token.isLegacy() && revokedTokenReplica.isAuthoritative()) {
+            return revokedTokenReplica.isRevoked(token);
+        }
+        List<String> keys = readsLegacyKeys()
+                ? List.of(blacklistKey(token), legacyKey(blacklistPrefix, token.getFingerprint()))
+                : List.of(blacklistKey(token));
+        return redisNearCache.multiGet(keys).contains(Boolean.TRUE.toString());
+    }
+
+    @Override
+    public void revokeToken(ParsedToken token) {
+        long remainingTtl = token.getRemainingTtlMillis();
+        if (remainingTtl <= 0) {
+            return;
+        }
+
+        // Index first so a replica seeding concurrently cannot miss the revocation
+        recordRevocation(token);
+
+        // Add to blacklist, drop the session and propagate to the revocation replicas. Tokens issued
+        // before generations were introduced are also tracked in the legacy session sets.
+        List<String> keys = new ArrayList<>(List.of(blacklistKey(token), sessionIndexKey(token.getSubject())));
+        if (token.getGeneration() == null) {
+            keys.addAll(userSessionsKeys(token.getSubject()));
+        }
+        redisTemplate.execute(REVOKE_TOKEN_SCRIPT,
+                keys,
+                String.valueOf(remainingTtl),
+                String.valueOf(token.getExpiration().getTime()),
+                String.valueOf(token.getFingerprint64()),
+                revokedTokensChannel,
+                token.getFingerprint());
+        RedisOperationCounter.increment();
+    }
+
+    @Override
+    public RefreshRotation rotateRefreshToken(ParsedToken token, String successorTokenId, long successorExpiresAt) {
+        String username = token.getSubject();
+        long remainingTtl = Math.max(token.getRemainingTtlMillis(), 1);
+
+        List<String> keys = new ArrayList<>(List.of(generationKey(username),
+                RedisKeys.tagged(refreshRotatedPrefix, username, token.getFingerprint()),
+                blacklistKey(token),
+                claimsStaleKey(username),
+                sessionIndexKey(username)));
+        if (readsLegacyKeys()) {
+            keys.addAll(List.of(legacyKey(tokenGenerationPrefix, username),
+                    legacyKey(refreshRotatedPrefix, token.getFingerprint()),
+                    legacyKey(blacklistPrefix, token.getFingerprint()),
+                    legacyKey(claimsStalePrefix, username)));
+        }
+
+        // Index first, as in revokeToken, so a replica seeding concurrently cannot miss the retired
+        // token. Tokens the script turns down are already revoked or of a retired generation anyway.
+        recordRevocation(token);
+
+        @SuppressWarnings("unchecked")
+        List<Object> result = redisTemplate.execute(ROTATE_REFRESH_SCRIPT,
+                keys,
+                String.valueOf(token.getGeneration()),
+                String.valueOf(remainingTtl),
+                String.valueOf(token.getExpiration().getTime()),
+                String.valueOf(token.getFingerprint64()),
+                revokedTokensChannel,
+                successorTokenId,
+                tokenStateChannel,
+                username,
+                token.getFingerprint(),
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(successorExpiresAt));
+        RedisOperationCounter.increment();
+
+        if (result == null || result.size() < 3) {
+            throw new IllegalStateException("Unexpected refresh rotation script result: " + result);
+        }
+
+        RefreshRotation.Outcome outcome = RefreshRotation.Outcome.valueOf(String.valueOf(result.get(0)));
+        UserTokenState userState = toUserTokenState(result.get(1), result.get(2));
+        return new RefreshRotation(outcome, userState.getGeneration(), userState.areClaimsStale(token));
+    }
+
+    @Override
+    public void markClaimsStale(String username, long ttlMillis) {
+        redisTemplate.execute(MARK_STALE_SCRIPT,
+                List.of(claimsStaleKey(username)),
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(ttlMillis),
+                tokenStateChannel,
+                username);
+        RedisOperationCounter.increment();
+    }
+
+    @Override
+    public long advanceGeneration(String username) {
+        List<String> keys = new ArrayList<>(List.of(generationKey(username)));
+        if (readsLegacyKeys()) {
+            keys.add(legacyKey(tokenGenerationPrefix, username));
+        }
+        keys.add(sessionIndexKey(username));
+        keys.addAll(userSessionsKeys(username));
+        Long generation = redisTemplate.execute(REVOKE_ALL_SCRIPT,
+                keys,
+                tokenStateChannel,
+                username,
+                readsLegacyKeys() ? "1" : "0");
+        RedisOperationCounter.increment();
+
+        if (generation == null) {
+            throw new IllegalStateException("Failed to advance token generation for user: " + username);
+        }
+        return generation;
+    }
+
+    @Override
+    public void recordSession(String username, String tokenId, long expiresAt) {
+        redisTemplate.execute(RECORD_SESSION_SCRIPT,
+                List.of(sessionIndexKey(username)),
+                String.valueOf(System.currentTimeMillis()),
+                tokenId,
+                String.valueOf(expiresAt));
+        RedisOperationCounter.increment();
+    }
+
+    @Override
+    public List<ActiveSession> listActiveSessions(String username) {
+        Set<ZSetOperations.TypedTuple<String>> live = redisTemplate.opsForZSet().rangeByScoreWithScores(
+                sessionIndexKey(username), System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        if (live == null) {
+            return List.of();
+        }
+        return live.stream()
+                .filter(entry -> entry.getValue() != null && entry.getScore() != null)
+                .map(entry -> new ActiveSession(entry.getValue(), entry.getScore().longValue()))
+                .toList();
+    }
+
+    @Override
+    public long countActiveSessions(String username) {
+        Long count = redisTemplate.opsForZSet().count(
+                sessionIndexKey(username), System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public void saveCode(CodePurpose purpose, String email, String hashedCode, Duration ttl) {
+        redisTemplate.opsForValue().set(codeKey(purpose, email), hashedCode, ttl);
+    }
+
+    @Override
+    public Optional<String> findCode(CodePurpose purpose, String email) {
+        String code = redisTemplate.opsForValue().get(codeKey(purpose, email));
+        if (code == null && readsLegacyKeys()) {
+            code = redisTemplate.opsForValue().get(legacyCodeKey(purpose, email));
+        }
+        return Optional.ofNullable(code);
+    }
+
+    @Override
+    public void deleteCode(CodePurpose purpose, String email) {
+        redisTemplate.delete(readsLegacyKeys()
+                ? List.of(codeKey(purpose, email), legacyCodeKey(purpose, email))
+                : List.of(codeKey(purpose, email)));
+    }
+
+    @Override
+    public long incrementVerificationAttempts(String email, Duration window) {
+        String attemptsKey = RedisKeys.tagged(VERIFICATION_ATTEMPTS_PREFIX, email);
+        Long attempts = redisTemplate.opsForValue().increment(attemptsKey);
+
+        if (attempts == null) {
+            throw new IllegalStateException("Failed to count verification attempts for: " + email);
+        }
+        if (attempts == 1) {
+            String legacyAttempts = readsLegacyKeys()
+                    ? redisTemplate.opsForValue().get(legacyKey(VERIFICATION_ATTEMPTS_PREFIX, email))
+                    : null;
+            if (legacyAttempts != null) {
+                // Resends counted under the old key name still count against the window
+                attempts = redisTemplate.opsForValue().increment(attemptsKey, Long.parseLong(legacyAttempts));
+            }
+            redisTemplate.expire(attemptsKey, window);
+        }
+        return attempts;
+    }
+
+    @Override
+    public void clearVerificationAttempts(String email) {
+        redisTemplate.delete(readsLegacyKeys()
+                ? List.of(RedisKeys.tagged(VERIFICATION_ATTEMPTS_PREFIX, email),
+                        legacyKey(VERIFICATION_ATTEMPTS_PREFIX, email))
+                : List.of(RedisKeys.tagged(VERIFICATION_ATTEMPTS_PREFIX, email)));
+    }
+
+    /**
+     * Adds the token to the global index the revocation replicas are seeded from.
+     */
+    private void recordRevocation(ParsedToken token) {
+        redisTemplate.opsForZSet().add(revokedIndexKey,
+                String.valueOf(token.getFingerprint64()),
+                token.getExpiration().getTime());
+        RedisOperationCounter.increment();
+    }
+
+    private boolean readsLegacyKeys() {
+        return legacyKeysEnabled && !"cluster".equals(redisMode);
+    }
+
+    private UserTokenState toUserTokenState(Object generation, Object staleSince) {
+        String stale = String.valueOf(staleSince);
+        return new UserTokenState(
+                Long.parseLong(String.valueOf(generation)),
+                stale.isEmpty() ? 0 : Long.parseLong(stale)
+        );
+    }
+
+    private String codeKey(CodePurpose purpose, String email) {
+        return switch (purpose) {
+            case EMAIL_VERIFICATION -> RedisKeys.tagged(VERIFICATION_CODE_PREFIX, email);
+            case PASSWORD_RESET -> RedisKeys.tagged(PASSWORD_RESET_TOKEN_PREFIX, email);
+        };
+    }
+
+    private String legacyCodeKey(CodePurpose purpose, String email) {
+        return switch (purpose) {
+            case EMAIL_VERIFICATION -> legacyKey(VERIFICATION_CODE_PREFIX, email);
+            case PASSWORD_RESET -> legacyKey(PASSWORD_RESET_TOKEN_PREFIX, email);
+        };
+    }
+
+    // Key name used before keys carried hash tags
+    private String legacyKey(String prefix, String suffix) {
+        return prefix + suffix;
+    }
+
+    // Per-user keys share the username as hash tag so multi-key scripts stay within one cluster slot
+    private String blacklistKey(ParsedToken token) {
+        return RedisKeys.tagged(blacklistPrefix, token.getSubject(), token.getFingerprint());
+    }
+
+    private String generationKey(String username) {
+        return RedisKeys.tagged(tokenGenerationPrefix, username);
+    }
+
+    private String claimsStaleKey(String username) {
+        return RedisKeys.tagged(claimsStalePrefix, username);
+    }
+
+    // Sessions of tokens without a generation claim; those issued before keys were hash-tagged are
+    // still listed under the old key name
+    private List<String> userSessionsKeys(String username) {
+        return readsLegacyKeys()
+                ? List.of(RedisKeys.tagged(userSessionsPrefix, username), legacyKey(userSessionsPrefix, username))
+                : List.of(RedisKeys.tagged(userSessionsPrefix, username));
+    }
+
+    private String sessionIndexKey(String username) {
+        return RedisKeys.tagged(sessionIndexPrefix, username);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.springrestful.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Result of atomically retiring a refresh token, see
+ * {@link com.example.springrestful.util.JwtUtil#rotateRefreshToken(ParsedToken, String)}.
+ */
+@Getter
+@AllArgsConstructor
+public final class RefreshRotation {
+
+    public enum Outcome {
+        /** Old token retired, successor registered; issue the new pair under {@code generation}. */
+        ROTATED,
+        /** The token was already rotated before: it was replayed, so the whole session family was revoked. */
+        REUSED,
+        /** The token was explicitly revoked. */
+        REVOKED,
+        /** The user logged out everywhere or changed password since the token was issued. */
+        STALE_GENERATION
+    }
+
+    private final Outcome outcome;
+    private final long generation;
+    private final boolean claimsStale;
+
+    public boolean isRotated() {
+        return outcome == Outcome.ROTATED;
+    }
+}
@@ -0,0 +1,512 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.util.RedisKeys;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Email queue with at-least-once delivery, kept in Redis under one hash tag:
+ * <ul>
+ *     <li>{@code {name}:stream}: a stream read by the {@link #GROUP} consumer group. Each entry is
+ *     delivered to one consumer and stays in that consumer's pending list until it is
+ *     acknowledged;</li>
+ *     <li>{@code {name}:retry}: failed entries scored by the time of their next attempt;</li>
+ *     <li>{@code {name}:dead}: entries that failed {@code max-attempts} times, were delivered
+ *     {@code max-deliveries} times without an outcome or cannot be read, capped at
+ *     {@code dead-letter-max-size}.</li>
+ * </ul>
+ * Any number of nodes can consume the same stream without sending an email twice. Entries left
+ * pending past the visibility timeout, e.g. by a node that died mid-send, are claimed by another
+ * consumer, so a crash after the send but before the acknowledgement sends the email twice.
+ * Retries back off exponentially with jitter. Acknowledged entries are trimmed once older than
+ * {@code retention-ms}; entries that were not delivered or acknowledged yet are never trimmed.
+ * <p>
+ * {@link #maintain(int)} also moves entries left in the list based queue this replaced into the
+ * stream, together with those of the lists used before keys carried hash tags, so nodes can be
+ * rolled over without losing emails.
+ */
+@Slf4j
+public class ReliableEmailQueue {
+
+    public record Settings(long visibilityTimeoutMs,
+                           int maxAttempts,
+                           int maxDeliveries,
+                           long retryBaseDelayMs,
+                           long retryMaxDelayMs,
+                           int deadLetterMaxSize,
+                           long retentionMs) {
+    }
+
+    /**
+     * An entry delivered to a consumer.
+     */
+    public record Entry(String id, String payload) {
+    }
+
+    public static final String GROUP = "email-dispatch";
+
+    private static final String PAYLOAD_FIELD = "payload";
+    private static final byte[] RAW_PAYLOAD_FIELD = PAYLOAD_FIELD.getBytes(StandardCharsets.UTF_8);
+    private static final String ATTEMPTS_FIELD = "attempts";
+    private static final String LAST_ERROR_FIELD = "lastError";
+    private static final String FAILED_AT_FIELD = "failedAt";
+
+    // Puts a delivered entry back at the end of the stream without counting an attempt.
+    // KEYS: stream. ARGV: group, entry id, payload.
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('XACK', KEYS[1], ARGV[1], ARGV[2]) == 0 then
+                return 0
+            end
+            redis.call('XADD', KEYS[1], '*', 'payload', ARGV[3])
+            return 1
+            """, Long.class);
+
+    // Acknowledges a failed entry and moves it to the retry set or the dead-letter list. Does
+    // nothing when the entry was acknowledged already.
+    // KEYS: stream, retry, dead. ARGV: group, entry id, updated payload, retry at or 'dead', dead-letter cap.
+    private static final RedisScript<Long> FAIL_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('XACK', KEYS[1], ARGV[1], ARGV[2]) == 0 then
+                return 0
+            end
+            if ARGV[4] == 'dead' then
+                redis.call('RPUSH', KEYS[3], ARGV[3])
+                redis.call('LTRIM', KEYS[3], -tonumber(ARGV[5]), -1)
+            else
+                redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3])
+            end
+            return 1
+            """, Long.class);
+
+    // Appends due retries to the stream, then entries left in the former processing list and
+    // queue, processing first as those were taken earlier, then those of any older lists.
+    // KEYS: stream, retry, legacy leases, legacy processing, legacy queue[, older lists]. ARGV: now, limit.
+    private static final RedisScript<Long> PROMOTE_SCRIPT = new DefaultRedisScript<>("""
+            local due = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+            for _, entry in ipairs(due) do
+                redis.call('ZREM', KEYS[2], entry)
+                redis.call('XADD', KEYS[1], '*', 'payload', entry)
+            end
+            for list = 4, #KEYS do
+                for i = 1, tonumber(ARGV[2]) do
+                    local entry = redis.call('LPOP', KEYS[list])
+                    if not entry then
+                        break
+                    end
+                    redis.call('XADD', KEYS[1], '*', 'payload', entry)
+                end
+            end
+            if redis.call('EXISTS', KEYS[4]) == 0 then
+                redis.call('DEL', KEYS[3])
+            end
+            return #due
+            """, Long.class);
+
+    // KEYS: stream. ARGV: lowest id to keep.
+    private static final RedisScript<Long> TRIM_SCRIPT = new DefaultRedisScript<>("""
+            return redis.call('XTRIM', KEYS[1], 'MINID', '~', ARGV[1])
+            """, Long.class);
+
+    @Getter
+    private final String name;
+    @Getter
+    private final String streamKey;
+    private final byte[] rawStreamKey;
+    private final String retryKey;
+    private final String deadKey;
+    private final List<String> promoteKeys;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Settings settings;
+
+    private final Map<String, AtomicLong> depths = new HashMap<>();
+    private final AtomicLong consumerLagMillis = new AtomicLong();
+    private final Counter acknowledged;
+    private final Counter retried;
+    private final Counter deadLettered;
+    private final Counter reclaimed;
+
+    /**
+     * @param untaggedLists lists from before keys carried hash tags to drain into the stream, in
+     *                      order; only usable outside cluster mode, as they live in other slots
+     */
+    public ReliableEmailQueue(String name,
+                              List<String> untaggedLists,
+                              StringRedisTemplate redisTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              Settings settings) {
+        this.name = name;
+        this.streamKey = RedisKeys.tagged("", name, "stream");
+        this.rawStreamKey = streamKey.getBytes(StandardCharsets.UTF_8);
+        this.retryKey = RedisKeys.tagged("", name, "retry");
+        this.deadKey = RedisKeys.tagged("", name, "dead");
+        List<String> promote = new ArrayList<>(List.of(streamKey, retryKey,
+                RedisKeys.tagged("", name, "leases"),
+                RedisKeys.tagged("", name, "processing"),
+                RedisKeys.tagged("", name, "queue")));
+        promote.addAll(untaggedLists);
+        this.promoteKeys = List.copyOf(promote);
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.settings = settings;
+
+        // Refreshed periodically so scraping never reaches Redis
+        for (String state : List.of("undelivered", "pending", "retry", "dead")) {
+            AtomicLong depth = new AtomicLong();
+            depths.put(state, depth);
+            Gauge.builder("email.queue.depth", depth, AtomicLong::get)
+                    .tag("queue", name)
+                    .tag("state", state)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("email.queue.consumer.lag", consumerLagMillis, lag -> lag.get() / 1000.0)
+                .description("Age of the oldest entry not delivered to any consumer yet")
+                .baseUnit("seconds")
+                .tag("queue", name)
+                .register(meterRegistry);
+        acknowledged = outcomeCounter(meterRegistry, "acknowledged");
+        retried = outcomeCounter(meterRegistry, "retried");
+        deadLettered = outcomeCounter(meterRegistry, "dead_lettered");
+        reclaimed = outcomeCounter(meterRegistry, "reclaimed");
+    }
+
+    /**
+     * Creates the stream and the consumer group, reading from the start of the stream, unless
+     * the group exists already.
+     */
+    public void ensureGroup() {
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(rawStreamKey, GROUP, ReadOffset.from("0-0"), true));
+        } catch (DataAccessException e) {
+            String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            if (message == null || !message.contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Appends entries to the stream in one pipeline flush.
+     */
+    public void pushAll(List<String> payloads) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String payload : payloads) {
+                connection.streamCommands().xAdd(rawStreamKey,
+                        Map.of(RAW_PAYLOAD_FIELD, payload.getBytes(StandardCharsets.UTF_8)));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Reads up to {@code count} entries not delivered to any consumer yet, blocking up to
+     * {@code block} while there are none. The connection is tied up until the read returns.
+     */
+    public List<Entry> read(RedisConnection connection, String consumer, int count, Duration block) {
+        return toEntries(connection.streamCommands().xReadGroup(
+                Consumer.from(GROUP, consumer),
+                StreamReadOptions.empty().count(count).block(block),
+                StreamOffset.create(rawStreamKey, ReadOffset.lastConsumed())));
+    }
+
+    /**
+     * Entries after {@code afterId} that were delivered to {@code consumer} before and not
+     * acknowledged, e.g. by the previous run of a restarted node.
+     */
+    public List<Entry> readPending(RedisConnection connection, String consumer, String afterId, int count) {
+        return toEntries(connection.streamCommands().xReadGroup(
+                Consumer.from(GROUP, consumer),
+                StreamReadOptions.empty().count(count),
+                StreamOffset.create(rawStreamKey, ReadOffset.from(afterId))));
+    }
+
+    /**
+     * Takes over up to {@code max} entries that other consumers left pending past the visibility
+     * timeout. Entries delivered {@code max-deliveries} times are dead-lettered instead, so an
+     * email that takes its consumer down cannot take down every other node in turn.
+     */
+    public List<Entry> claimStuck(String consumer, int max) {
+        Duration visibilityTimeout = Duration.ofMillis(settings.visibilityTimeoutMs());
+        PendingMessages pending = redisTemplate.opsForStream().pending(streamKey, GROUP, Range.unbounded(), max);
+
+        List<RecordId> stuck = new ArrayList<>();
+        List<RecordId> poisoned = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().compareTo(visibilityTimeout) < 0) {
+                continue;
+            }
+            if (message.getTotalDeliveryCount() >= settings.maxDeliveries()) {
+                poisoned.add(message.getId());
+            } else {
+                stuck.add(message.getId());
+            }
+        }
+
+        for (Entry entry : claim(consumer, poisoned, visibilityTimeout)) {
+            fail(entry, "Delivered " + settings.maxDeliveries() + " times without an outcome", true);
+        }
+        List<Entry> claimed = claim(consumer, stuck, visibilityTimeout);
+        if (!claimed.isEmpty()) {
+            reclaimed.increment(claimed.size());
+            log.warn("♻️ Claimed {} emails on {} left pending past the visibility timeout", claimed.size(), name);
+        }
+        return claimed;
+    }
+
+    public void acknowledge(Entry entry) {
+        Long acked = redisTemplate.opsForStream().acknowledge(streamKey, GROUP, entry.id());
+        if (acked == null || acked == 0) {
+            log.warn("⚠️ Acknowledged an email on {} that was no longer pending, it may have been sent twice", name);
+        }
+        acknowledged.increment();
+    }
+
+    /**
+     * Puts a delivered entry back at the end of the stream, e.g. when no worker could take it.
+     */
+    public void release(Entry entry) {
+        redisTemplate.execute(RELEASE_SCRIPT, List.of(streamKey), GROUP, entry.id(), entry.payload());
+    }
+
+    /**
+     * Schedules a retry of a delivered entry after a failed send, or dead-letters it once it used
+     * up its attempts or when it cannot be read at all.
+     */
+    public void fail(Entry entry, String error) {
+        fail(entry, error, false);
+    }
+
+    /**
+     * Queues due retries, moves up to {@code limit} entries of each kind out of the former list
+     * based queue and trims acknowledged entries past the retention.
+     */
+    public void maintain(int limit) {
+        Long promoted = redisTemplate.execute(PROMOTE_SCRIPT, promoteKeys,
+                String.valueOf(System.currentTimeMillis()), String.valueOf(limit));
+        if (promoted != null && promoted > 0) {
+            log.debug("🔁 Requeued {} email retries on {}", promoted, name);
+        }
+
+        String keepFrom = lowestIdToKeep();
+        if (keepFrom != null) {
+            redisTemplate.execute(TRIM_SCRIPT, List.of(streamKey), keepFrom);
+        }
+    }
+
+    /**
+     * Deletes consumers other than {@code self} that have nothing pending and did not read for
+     * {@code idle}, e.g. those of nodes that were replaced.
+     */
+    public void removeIdleConsumers(String self, Duration idle) {
+        for (StreamInfo.XInfoConsumer consumer : redisTemplate.opsForStream().consumers(streamKey, GROUP)) {
+            if (!consumer.consumerName().equals(self)
+                    && consumer.pendingCount() == 0
+                    && consumer.idleTime().compareTo(idle) > 0) {
+                redisTemplate.opsForStream().deleteConsumer(streamKey, Consumer.from(GROUP, consumer.consumerName()));
+                log.info("🧹 Removed idle consumer {} from {}", consumer.consumerName(), name);
+            }
+        }
+    }
+
+    /**
+     * Most recent dead letters first.
+     */
+    public List<String> deadLetters(int limit) {
+        List<String> entries = redisTemplate.opsForList().range(deadKey, -limit, -1);
+        if (entries == null) {
+            return List.of();
+        }
+        List<String> newestFirst = new ArrayList<>(entries);
+        Collections.reverse(newestFirst);
+        return newestFirst;
+    }
+
+    public void refreshDepths() {
+        StreamInfo.XInfoGroup group = findGroup();
+        if (group != null) {
+            depths.get("pending").set(group.pendingCount());
+            // XINFO GROUPS reports the lag from Redis 7 on
+            if (group.getRaw().get("lag") instanceof Number lag) {
+                depths.get("undelivered").set(lag.longValue());
+            }
+            consumerLagMillis.set(oldestUndeliveredAge(group.lastDeliveredId()));
+        }
+        depths.get("retry").set(size(redisTemplate.opsForZSet().zCard(retryKey)));
+        depths.get("dead").set(size(redisTemplate.opsForList().size(deadKey)));
+    }
+
+    private void fail(Entry entry, String error, boolean deadLetter) {
+        Map<String, String> data;
+        try {
+            data = objectMapper.readValue(entry.payload(), Map.class);
+        } catch (Exception e) {
+            moveAfterFailure(entry, entry.payload(), "dead");
+            return;
+        }
+
+        int attempts = Integer.parseInt(data.getOrDefault(ATTEMPTS_FIELD, "0")) + 1;
+        data.put(ATTEMPTS_FIELD, String.valueOf(attempts));
+        data.put(LAST_ERROR_FIELD, error == null ? "unknown" : error);
+        data.put(FAILED_AT_FIELD, String.valueOf(System.currentTimeMillis()));
+
+        String updated;
+        try {
+            updated = objectMapper.writeValueAsString(data);
+        } catch (Exception e) {
+            updated = entry.payload();
+        }
+
+        if (deadLetter || attempts >= settings.maxAttempts()) {
+            moveAfterFailure(entry, updated, "dead");
+        } else {
+            long retryAt = System.currentTimeMillis() + backoff(attempts);
+            moveAfterFailure(entry, updated, String.valueOf(retryAt));
+        }
+    }
+
+    private void moveAfterFailure(Entry entry, String updated, String target) {
+        Long moved = redisTemplate.execute(FAIL_SCRIPT,
+                List.of(streamKey, retryKey, deadKey),
+                GROUP,
+                entry.id(),
+                updated,
+                target,
+                String.valueOf(settings.deadLetterMaxSize()));
+        if (moved == null || moved == 0) {
+            return;
+        }
+        if ("dead".equals(target)) {
+            deadLettered.increment();
+            log.error("☠️ Email on {} moved to the dead-letter list", name);
+        } else {
+            retried.increment();
+        }
+    }
+
+    // Only entries still idle for minIdle are claimed, so two consumers never take the same one
+    private List<Entry> claim(String consumer, List<RecordId> ids, Duration minIdle) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().claim(streamKey, GROUP,
+                consumer, RedisStreamCommands.XClaimOptions.minIdle(minIdle).ids(ids));
+        List<Entry> entries = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            Object payload = record.getValue().get(PAYLOAD_FIELD);
+            entries.add(new Entry(record.getId().getValue(), payload == null ? "" : payload.toString()));
+        }
+        return entries;
+    }
+
+    // Keeps everything pending, not delivered yet or within the retention
+    private String lowestIdToKeep() {
+        StreamInfo.XInfoGroup group = findGroup();
+        if (group == null) {
+            return null;
+        }
+
+        long keepFrom = Math.min(System.currentTimeMillis() - settings.retentionMs(),
+                RecordId.of(group.lastDeliveredId()).getTimestamp());
+        if (group.pendingCount() > 0) {
+            PendingMessagesSummary pending = redisTemplate.opsForStream().pending(streamKey, GROUP);
+            if (pending != null && pending.getTotalPendingMessages() > 0) {
+                keepFrom = Math.min(keepFrom, pending.minRecordId().getTimestamp());
+            }
+        }
+        return keepFrom > 0 ? keepFrom + "-0" : null;
+    }
+
+    private long oldestUndeliveredAge(String lastDeliveredId) {
+        List<MapRecord<String, Object, Object>> next = redisTemplate.opsForStream().range(streamKey,
+                Range.leftOpen(lastDeliveredId, "+"), Limit.limit().count(1));
+        if (next == null || next.isEmpty()) {
+            return 0;
+        }
+        return Math.max(System.currentTimeMillis() - next.get(0).getId().getTimestamp(), 0);
+    }
+
+    private StreamInfo.XInfoGroup findGroup() {
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(streamKey))) {
+            return null;
+        }
+        for (StreamInfo.XInfoGroup group : redisTemplate.opsForStream().groups(streamKey)) {
+            if (GROUP.equals(group.groupName())) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    private List<Entry> toEntries(List<ByteRecord> records) {
+        if (records == null || records.isEmpty()) {
+            return List.of();
+        }
+        List<Entry> entries = new ArrayList<>(records.size());
+        for (ByteRecord record : records) {
+            String payload = "";
+            for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()) {
+                if (Arrays.equals(field.getKey(), RAW_PAYLOAD_FIELD)) {
+                    payload = new String(field.getValue(), StandardCharsets.UTF_8);
+                }
+            }
+            entries.add(new Entry(record.getId().getValue(), payload));
+        }
+        return entries;
+    }
+
+    // Exponential backoff with +/-20% jitter so failures from one outage do not retry in lockstep
+    private long backoff(int attempts) {
+        long delay = settings.retryBaseDelayMs() << Math.min(attempts - 1, 30);
+        delay = Math.min(Math.max(delay, 0), settings.retryMaxDelayMs());
+        return (long) (delay * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+
+    private long size(Long size) {
+        return size == null ? 0 : size;
+    }
+
+    private Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("email.queue.outcome")
+                .tag("queue", name)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
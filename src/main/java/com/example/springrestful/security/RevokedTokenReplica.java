@@ -0,0 +1,219 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.util.ExpiringLongHashSet;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local replica of the revoked token ids, so the blacklist check on the request path is a
+ * memory probe instead of a Redis call.
+ * <p>
+ * {@link RedisTokenStore#revokeToken(ParsedToken)} records every
+ * revocation in a Redis sorted set scored by token expiry and publishes it on the revoked tokens
+ * channel. Each node subscribes first, then seeds itself from the sorted set, and re-syncs
+ * periodically.
+ * <p>
+ * Messages published while the subscription is down are lost, so the replica only reports itself
+ * as authoritative while it can tell that none were missed: every node publishes a heartbeat on the
+ * channel each {@code heartbeat-interval-ms}, and the replica gives up its authority when nothing
+ * arrived for {@code max-silence-ms}, when the subscription is (re)confirmed or when the table is
+ * full. It regains it with the next sync that started after the subscription was confirmed. While
+ * not authoritative, or when the last sync is older than {@code max-staleness-ms}, callers fall
+ * back to Redis.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "jwt.token-store.type", havingValue = "redis", matchIfMissing = true)
+public class RevokedTokenReplica implements MessageListener, SubscriptionListener {
+
+    private static final String HEARTBEAT = "heartbeat";
+
+    @Qualifier("authRedisTemplate")
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Value("${jwt.revocation-replica.enabled}")
+    private boolean enabled;
+
+    @Value("${jwt.revocation-replica.initial-capacity}")
+    private int initialCapacity;
+
+    @Value("${jwt.revocation-replica.off-heap}")
+    private boolean offHeap;
+
+    @Value("${jwt.revocation-replica.max-staleness-ms}")
+    private long maxStalenessMs;
+
+    @Value("${jwt.revocation-replica.max-silence-ms}")
+    private long maxSilenceMs;
+
+    @Value("${jwt.redis.revoked-index-key}")
+    private String revokedIndexKey;
+
+    @Value("${jwt.redis.channel.revoked-tokens}")
+    private String revokedTokensChannel;
+
+    private ExpiringLongHashSet revoked;
+    private volatile long lastSyncedAt;
+    private volatile long lastMessageAt;
+    // Bumped whenever the subscription is confirmed or lost; a sync that raced with it does not count
+    private final AtomicLong subscriptionEpoch = new AtomicLong();
+    private volatile boolean subscribed;
+    private volatile boolean resyncPending;
+
+    @PostConstruct
+    void subscribe() {
+        revoked = new ExpiringLongHashSet(initialCapacity, offHeap);
+        if (enabled) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(revokedTokensChannel));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (enabled) {
+            resync();
+        }
+    }
+
+    /**
+     * True when the replica can answer revocation checks on its own.
+     */
+    public boolean isAuthoritative() {
+        long now = System.currentTimeMillis();
+        return enabled && lastSyncedAt > 0
+                && now - lastSyncedAt < maxStalenessMs
+                && now - lastMessageAt < maxSilenceMs;
+    }
+
+    public boolean isRevoked(ParsedToken token) {
+        return revoked.contains(token.getFingerprint64(), System.currentTimeMillis());
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation-replica.resync-interval-ms}",
+            initialDelayString = "${jwt.revocation-replica.resync-interval-ms}")
+    public void resync() {
+        if (!enabled) {
+            return;
+        }
+        long epoch = subscriptionEpoch.get();
+        if (!subscribed) {
+            // Whatever the sync reads could be outdated by messages this node never receives
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            ZSetOperations<String, String> index = redisTemplate.opsForZSet();
+            index.removeRangeByScore(revokedIndexKey, Double.NEGATIVE_INFINITY, now);
+            Set<ZSetOperations.TypedTuple<String>> live =
+                    index.rangeByScoreWithScores(revokedIndexKey, now, Double.POSITIVE_INFINITY);
+
+            revoked.purgeExpired(now);
+            boolean complete = true;
+            if (live != null) {
+                for (ZSetOperations.TypedTuple<String> entry : live) {
+                    if (entry.getValue() != null && entry.getScore() != null) {
+                        complete &= revoked.add(Long.parseLong(entry.getValue()), entry.getScore().longValue(), now);
+                    }
+                }
+            }
+            if (!complete) {
+                dropAuthority("the replica is full");
+                return;
+            }
+            if (subscriptionEpoch.get() == epoch) {
+                lastSyncedAt = now;
+                resyncPending = false;
+            }
+            log.debug("🗄️ Revocation replica synced with {} live entries", live == null ? 0 : live.size());
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to sync revocation replica, falling back to Redis lookups: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes this node's heartbeat and, after the subscription was (re)established, re-syncs
+     * right away instead of waiting for the next periodic sync.
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation-replica.heartbeat-interval-ms}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(revokedTokensChannel, HEARTBEAT);
+        } catch (Exception e) {
+            log.debug("Failed to publish revocation replica heartbeat: {}", e.getMessage());
+        }
+        if (resyncPending) {
+            resync();
+        }
+    }
+
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        subscribed = true;
+        resyncPending = true;
+        dropAuthority("the revoked tokens subscription was (re)established");
+    }
+
+    @Override
+    public void onChannelUnsubscribed(byte[] channel, long count) {
+        subscribed = false;
+        dropAuthority("the revoked tokens subscription was lost");
+    }
+
+    /**
+     * Messages have the form {@code <fingerprint64>:<expiresAtMillis>}, or are heartbeats.
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        lastMessageAt = System.currentTimeMillis();
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (HEARTBEAT.equals(body)) {
+            return;
+        }
+        int separator = body.indexOf(':');
+        if (separator < 0) {
+            log.warn("⚠️ Ignoring malformed revocation message: {}", body);
+            return;
+        }
+        try {
+            long fingerprint = Long.parseLong(body.substring(0, separator));
+            long expiresAt = Long.parseLong(body.substring(separator + 1));
+            if (!revoked.add(fingerprint, expiresAt, System.currentTimeMillis())) {
+                dropAuthority("the replica is full");
+            }
+        } catch (NumberFormatException e) {
+            log.warn("⚠️ Ignoring malformed revocation message: {}", body);
+        }
+    }
+
+    private void dropAuthority(String reason) {
+        subscriptionEpoch.incrementAndGet();
+        if (lastSyncedAt != 0) {
+            log.warn("⚠️ Revocation replica no longer authoritative, {}: falling back to Redis until the next sync", reason);
+        }
+        lastSyncedAt = 0;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.springrestful.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Raw token state as read from a {@link TokenStore}, before it is checked against the token's
+ * own generation and issue time.
+ */
+@Getter
+@AllArgsConstructor
+public final class StoredTokenState {
+
+    private final boolean blacklisted;
+    private final UserTokenState userState;
+
+    // Only meaningful for tokens issued before generations were introduced
+    private final boolean legacySessionMember;
+}
@@ -0,0 +1,116 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.util.BoundedExpiringMap;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Node-local cache of {@link UserTokenState}, so validating a token is usually an integer
+ * comparison served from memory.
+ * <p>
+ * Whenever a user's generation or claims marker changes, the writer publishes the username on
+ * the token state channel and every node evicts its entry; the next lookup reloads it from Redis.
+ * Entries are also reloaded after a short TTL as a safety net for missed pub/sub messages, and
+ * kept for {@link #peek} until {@code max-stale-seconds}. With the in-memory token store there is
+ * no channel and the local evictions by {@link com.example.springrestful.util.JwtUtil} suffice.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TokenGenerationCache implements MessageListener {
+
+    private final ObjectProvider<RedisMessageListenerContainer> listenerContainer;
+
+    @Value("${jwt.redis.channel.token-state}")
+    private String tokenStateChannel;
+
+    @Value("${jwt.token-state-cache.max-size}")
+    private int maxSize;
+
+    @Value("${jwt.token-state-cache.ttl-seconds}")
+    private long ttlSeconds;
+
+    @Value("${jwt.token-state-cache.max-stale-seconds}")
+    private long maxStaleSeconds;
+
+    private BoundedExpiringMap<String, Entry> entries;
+
+    // Eviction counters striped by username: a load that raced with an eviction of its user must not
+    // repopulate the cache, while evictions of other users, e.g. on every login, leave it alone
+    private static final int INVALIDATION_STRIPES = 4096;
+    private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    @PostConstruct
+    void subscribe() {
+        entries = new BoundedExpiringMap<>(maxSize);
+        listenerContainer.ifAvailable(container ->
+                container.addMessageListener(this, new ChannelTopic(tokenStateChannel)));
+    }
+
+    public Optional<UserTokenState> get(String username) {
+        Entry entry = entries.get(username);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.freshUntil < System.currentTimeMillis()) {
+            // Left in place for peek(); the next load replaces it
+            return Optional.empty();
+        }
+        return Optional.of(entry.state);
+    }
+
+    /**
+     * Last known state even if its TTL has passed, up to {@code max-stale-seconds}, for degraded
+     * operation while Redis is unavailable. Entries evicted by an invalidation are never returned.
+     */
+    public Optional<UserTokenState> peek(String username) {
+        Entry entry = entries.get(username);
+        return entry == null ? Optional.empty() : Optional.of(entry.state);
+    }
+
+    /**
+     * Marker to take before reading the user's state from Redis and hand back to {@link #put}.
+     */
+    public long loadMarker(String username) {
+        return invalidations.get(stripe(username));
+    }
+
+    public void put(String username, UserTokenState state, long loadMarker) {
+        if (invalidations.get(stripe(username)) != loadMarker) {
+            return;
+        }
+        entries.put(username, new Entry(state, System.currentTimeMillis() + ttlSeconds * 1000),
+                Math.max(maxStaleSeconds, ttlSeconds) * 1000);
+    }
+
+    public void evict(String username) {
+        invalidations.incrementAndGet(stripe(username));
+        entries.remove(username);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String username = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("🔄 Token state changed for user: {}", username);
+        evict(username);
+    }
+
+    private static int stripe(String username) {
+        return (username.hashCode() & Integer.MAX_VALUE) % INVALIDATION_STRIPES;
+    }
+
+    private record Entry(UserTokenState state, long freshUntil) {
+    }
+}
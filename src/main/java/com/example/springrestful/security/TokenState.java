@@ -0,0 +1,21 @@
+package com.example.springrestful.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Server-side state of a single token, resolved in one Redis round trip by
+ * {@link com.example.springrestful.util.JwtUtil#lookupTokenState(ParsedToken)}.
+ */
+@Getter
+@AllArgsConstructor
+public final class TokenState {
+
+    private final boolean blacklisted;
+    private final boolean activeSession;
+    private final boolean claimsStale;
+
+    public boolean isValid() {
+        return !blacklisted && activeSession;
+    }
+}
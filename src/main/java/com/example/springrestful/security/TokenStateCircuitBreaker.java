@@ -0,0 +1,230 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.util.JwtUtil;
+import com.example.springrestful.util.RedisTimeoutBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker around the token state lookup on the request path.
+ * <p>
+ * Each lookup runs under a short {@link RedisTimeoutBudget}, so a stalled Redis costs a request
+ * at most {@code timeout-ms} instead of the full command timeout. After {@code failure-threshold}
+ * consecutive failures the breaker opens and lookups are skipped for {@code open-duration-ms};
+ * then a single probe is let through and its result closes or re-opens the breaker. Any exception
+ * thrown by the store counts as a failure.
+ * <p>
+ * While Redis cannot answer, tokens whose user has a fresh cached generation are still checked
+ * exactly when the local revocation replica is authoritative, as on the normal path. Otherwise
+ * the {@code fallback} policy decides:
+ * <ul>
+ *     <li>{@code fail-closed}: the request is refused with a 503;</li>
+ *     <li>{@code accept-recent}: a token issued less than {@code accept-recent-max-age-seconds}
+ *     ago is accepted when the last cached generation of its user matches and the local
+ *     revocation replica does not list it. Older tokens, and tokens of users with no cached
+ *     generation, are refused as with {@code fail-closed}.</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TokenStateCircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public enum FallbackPolicy {
+        FAIL_CLOSED,
+        ACCEPT_RECENT
+    }
+
+    private final JwtUtil jwtUtil;
+    private final TokenGenerationCache tokenGenerationCache;
+    private final ObjectProvider<RevokedTokenReplica> revokedTokenReplica;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${jwt.token-state.timeout-ms}")
+    private long timeoutMs;
+
+    @Value("${jwt.token-state.breaker.failure-threshold}")
+    private int failureThreshold;
+
+    @Value("${jwt.token-state.breaker.open-duration-ms}")
+    private long openDurationMs;
+
+    @Value("${jwt.token-state.fallback}")
+    private FallbackPolicy fallbackPolicy;
+
+    @Value("${jwt.token-state.accept-recent-max-age-seconds}")
+    private long acceptRecentMaxAgeSeconds;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean probeInFlight = new AtomicBoolean();
+    private volatile long openedAt;
+
+    private Duration timeout;
+    private Counter successes;
+    private Counter failures;
+    private Counter shortCircuited;
+    private Counter answeredLocally;
+    private Counter fallbackAccepted;
+    private Counter fallbackRejected;
+
+    @PostConstruct
+    void registerMetrics() {
+        timeout = Duration.ofMillis(timeoutMs);
+        Gauge.builder("auth.token_state.breaker.state", state, s -> s.get().ordinal())
+                .description("0 = closed, 1 = open, 2 = half-open")
+                .register(meterRegistry);
+        successes = Counter.builder("auth.token_state.calls").tag("outcome", "success").register(meterRegistry);
+        failures = Counter.builder("auth.token_state.calls").tag("outcome", "failure").register(meterRegistry);
+        shortCircuited = Counter.builder("auth.token_state.calls").tag("outcome", "short_circuited").register(meterRegistry);
+        answeredLocally = Counter.builder("auth.token_state.fallback").tag("result", "local").register(meterRegistry);
+        fallbackAccepted = Counter.builder("auth.token_state.fallback").tag("result", "accepted").register(meterRegistry);
+        fallbackRejected = Counter.builder("auth.token_state.fallback").tag("result", "rejected").register(meterRegistry);
+    }
+
+    /**
+     * Token state from the store, or from the fallback policy while the store is unavailable.
+     * Empty when the state cannot be determined and the request must be refused.
+     */
+    public Optional<TokenState> lookup(ParsedToken token) {
+        boolean probe = false;
+        if (state.get() != State.CLOSED) {
+            probe = tryStartProbe();
+            if (!probe) {
+                shortCircuited.increment();
+                return fallback(token);
+            }
+        }
+
+        RedisTimeoutBudget.start(timeout);
+        try {
+            TokenState tokenState = jwtUtil.lookupTokenState(token);
+            onSuccess();
+            return Optional.of(tokenState);
+        } catch (RuntimeException e) {
+            onFailure(e);
+            return fallback(token);
+        } finally {
+            RedisTimeoutBudget.clear();
+            if (probe) {
+                probeInFlight.set(false);
+            }
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Seconds until the breaker lets the next probe through, at least 1.
+     */
+    public long getRetryAfterSeconds() {
+        if (state.get() == State.CLOSED) {
+            return 1;
+        }
+        long remaining = openedAt + openDurationMs - System.currentTimeMillis();
+        return Math.max(1, (remaining + 999) / 1000);
+    }
+
+    private boolean tryStartProbe() {
+        if (state.get() == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+            state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        return state.get() == State.HALF_OPEN && probeInFlight.compareAndSet(false, true);
+    }
+
+    private void onSuccess() {
+        successes.increment();
+        consecutiveFailures.set(0);
+        if (state.getAndSet(State.CLOSED) != State.CLOSED) {
+            log.info("✅ Token state circuit breaker closed, Redis is answering again");
+        }
+    }
+
+    private void onFailure(RuntimeException e) {
+        failures.increment();
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAt = System.currentTimeMillis();
+            if (state.getAndSet(State.OPEN) != State.OPEN) {
+                log.warn("⚠️ Token state circuit breaker opened for {} ms: {}", openDurationMs, e.getMessage());
+            }
+        } else {
+            log.warn("⚠️ Token state lookup failed: {}", e.getMessage());
+        }
+    }
+
+    private Optional<TokenState> fallback(ParsedToken token) {
+        Optional<TokenState> local = localState(token);
+        if (local.isPresent()) {
+            answeredLocally.increment();
+            return local;
+        }
+        if (fallbackPolicy != FallbackPolicy.ACCEPT_RECENT || token.getGeneration() == null || !isRecent(token)) {
+            fallbackRejected.increment();
+            return Optional.empty();
+        }
+
+        // Without a known generation the token may belong to a session that was logged out
+        Optional<UserTokenState> lastKnown = tokenGenerationCache.peek(token.getSubject());
+        if (lastKnown.isEmpty()) {
+            fallbackRejected.increment();
+            return Optional.empty();
+        }
+        UserTokenState userState = lastKnown.get();
+
+        RevokedTokenReplica replica = revokedTokenReplica.getIfAvailable();
+        boolean revoked = replica != null && replica.isRevoked(token);
+
+        fallbackAccepted.increment();
+        return Optional.of(new TokenState(revoked,
+                userState.getGeneration() == token.getGeneration(),
+                userState.areClaimsStale(token)));
+    }
+
+    /**
+     * The state the store lookup would have produced, when it can be told from node-local state
+     * alone: a fresh cached generation covering the token and an authoritative revocation replica.
+     */
+    private Optional<TokenState> localState(ParsedToken token) {
+        if (token.getGeneration() == null || token.isLegacy()) {
+            return Optional.empty();
+        }
+        Optional<UserTokenState> cached = tokenGenerationCache.get(token.getSubject());
+        if (cached.isEmpty() || token.getGeneration() > cached.get().getGeneration()) {
+            return Optional.empty();
+        }
+        RevokedTokenReplica replica = revokedTokenReplica.getIfAvailable();
+        if (replica == null || !replica.isAuthoritative()) {
+            return Optional.empty();
+        }
+        UserTokenState userState = cached.get();
+        return Optional.of(new TokenState(replica.isRevoked(token),
+                userState.getGeneration() == token.getGeneration(),
+                userState.areClaimsStale(token)));
+    }
+
+    private boolean isRecent(ParsedToken token) {
+        return token.getIssuedAt() != null
+                && System.currentTimeMillis() - token.getIssuedAt().getTime() <= acceptRecentMaxAgeSeconds * 1000;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.springrestful.security;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Server-side state behind authentication: token revocation, per-user token generations and
+ * claims markers, and the short-lived verification and password reset codes.
+ * <p>
+ * {@link RedisTokenStore} shares the state between all nodes and is the default.
+ * {@link InMemoryTokenStore} keeps it in bounded, expiring maps inside the process, for
+ * single-node installs and for exercising the auth path without a Redis server. Select one with
+ * {@code jwt.token-store.type}.
+ * <p>
+ * Caching in front of the store is left to {@link com.example.springrestful.util.JwtUtil}.
+ */
+public interface TokenStore {
+
+    enum CodePurpose {
+        EMAIL_VERIFICATION,
+        PASSWORD_RESET
+    }
+
+    /**
+     * Blacklist entry, user state and, for tokens without a generation, legacy session membership,
+     * resolved in one operation.
+     */
+    StoredTokenState loadTokenState(ParsedToken token);
+
+    UserTokenState loadUserState(String username);
+
+    boolean isBlacklisted(ParsedToken token);
+
+    /**
+     * Blacklists the token until it expires and, for refresh tokens, drops its session.
+     */
+    void revokeToken(ParsedToken token);
+
+    /**
+     * Atomically retires a refresh token issued under a generation and registers its successor,
+     * revoking the whole session family when the token was already rotated before. On success the
+     * successor takes the retired token's place in the session index.
+     */
+    RefreshRotation rotateRefreshToken(ParsedToken token, String successorTokenId, long successorExpiresAt);
+
+    /**
+     * Records that claims of tokens issued up to now must no longer be trusted.
+     */
+    void markClaimsStale(String username, long ttlMillis);
+
+    /**
+     * Moves the user to a new token generation, retiring all of their tokens and sessions.
+     *
+     * @return the new generation
+     */
+    long advanceGeneration(String username);
+
+    /**
+     * Adds a newly issued refresh token to the user's session index, pruning expired sessions.
+     */
+    void recordSession(String username, String tokenId, long expiresAt);
+
+    /**
+     * Sessions that have not expired yet, soonest to expire first.
+     */
+    List<ActiveSession> listActiveSessions(String username);
+
+    long countActiveSessions(String username);
+
+    void saveCode(CodePurpose purpose, String email, String hashedCode, Duration ttl);
+
+    Optional<String> findCode(CodePurpose purpose, String email);
+
+    void deleteCode(CodePurpose purpose, String email);
+
+    /**
+     * Counts verification code resends within a window that starts with the first resend.
+     *
+     * @return the number of resends in the current window, including this one
+     */
+    long incrementVerificationAttempts(String email, Duration window);
+
+    void clearVerificationAttempts(String email);
+}
@@ -0,0 +1,29 @@
+package com.example.springrestful.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Per-user revocation state shared by all of a user's tokens.
+ * <p>
+ * {@code generation} is bumped on logout-everywhere, password change and password reset;
+ * tokens issued under an older generation are no longer accepted. {@code claimsStaleSince}
+ * is the epoch millis of the last change to the claims, or 0 when unset; tokens issued in an
+ * earlier second carry stale claims and the user must be reloaded instead.
+ */
+@Getter
+@AllArgsConstructor
+public final class UserTokenState {
+
+    private final long generation;
+    private final long claimsStaleSince;
+
+    public boolean areClaimsStale(ParsedToken token) {
+        if (claimsStaleSince == 0) {
+            return false;
+        }
+        // iat has second precision: tokens issued right after the marker share its second and must
+        // not be stale, so only tokens from an earlier second are
+        return token.getIssuedAt() == null || token.getIssuedAt().getTime() < claimsStaleSince / 1000 * 1000;
+    }
+}
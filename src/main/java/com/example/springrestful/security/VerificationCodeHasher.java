@@ -0,0 +1,21 @@
+package com.example.springrestful.security;
+
+/**
+ * Strategy for hashing the short-lived verification and password reset codes kept in Redis.
+ */
+public interface VerificationCodeHasher {
+
+    /**
+     * Name used to select this hasher through {@code verification.code.hasher}.
+     */
+    String getName();
+
+    String hash(String plainCode);
+
+    boolean matches(String plainCode, String storedHash);
+
+    /**
+     * Whether {@code storedHash} was produced by this hasher.
+     */
+    boolean supports(String storedHash);
+}
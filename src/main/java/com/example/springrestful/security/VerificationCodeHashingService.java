@@ -0,0 +1,39 @@
+package com.example.springrestful.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Hashes new codes with the hasher selected by {@code verification.code.hasher} and verifies
+ * stored codes with whichever hasher produced them.
+ */
+@Service
+public class VerificationCodeHashingService {
+
+    private final List<VerificationCodeHasher> hashers;
+    private final VerificationCodeHasher activeHasher;
+
+    public VerificationCodeHashingService(List<VerificationCodeHasher> hashers,
+                                          @Value("${verification.code.hasher}") String hasherName) {
+        this.hashers = hashers;
+        this.activeHasher = hashers.stream()
+                .filter(hasher -> hasher.getName().equalsIgnoreCase(hasherName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown verification code hasher: " + hasherName));
+    }
+
+    public String hash(String plainCode) {
+        return activeHasher.hash(plainCode);
+    }
+
+    public boolean matches(String plainCode, String storedHash) {
+        for (VerificationCodeHasher hasher : hashers) {
+            if (hasher.supports(storedHash)) {
+                return hasher.matches(plainCode, storedHash);
+            }
+        }
+        return false;
+    }
+}
@@ -5,10 +5,14 @@ import com.example.springrestful.entity.Organization;
 import com.example.springrestful.exception.InvalidInvitationException;
 import com.example.springrestful.repository.EmployeeInvitationRepository;
 import com.example.springrestful.security.EmailService;
+import com.example.springrestful.util.RedisKeys;
+import com.example.springrestful.util.RedisNearCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -28,6 +32,7 @@ public class EmployeeInvitationService {
     private final OrganizationService organizationService;
     private final EmailService emailService;
     private final RedisTemplate<String, String> redisTemplate;
+    private final RedisNearCache redisNearCache;
 
     @Transactional
     public EmployeeInvitation createInvitation(Long organizationId, String email) {
@@ -38,7 +43,7 @@ public class EmployeeInvitationService {
         EmployeeInvitation savedInvitation = invitationRepository.save(invitation);
 
         cacheInvitationData(savedInvitation);
-        emailService.sendInvitationEmail(savedInvitation);
+        emailService.queueInvitationEmail(savedInvitation);
 
         return savedInvitation;
     }
@@ -60,7 +65,7 @@ public class EmployeeInvitationService {
         String token;
         do {
             token = UUID.randomUUID().toString();
-        } while (Boolean.TRUE.equals(redisTemplate.hasKey(INVITATION_TOKEN_PREFIX + token)));
+        } while (Boolean.TRUE.equals(redisTemplate.hasKey(RedisKeys.tagged(INVITATION_TOKEN_PREFIX, token))));
         return token;
     }
 
@@ -76,8 +81,8 @@ public class EmployeeInvitationService {
     }
 
     private void cacheInvitationData(EmployeeInvitation invitation) {
-        String cacheKey = INVITATION_CACHE_PREFIX + invitation.getInvitationToken();
-        String tokenKey = INVITATION_TOKEN_PREFIX + invitation.getInvitationToken();
+        String cacheKey = RedisKeys.tagged(INVITATION_CACHE_PREFIX, invitation.getInvitationToken());
+        String tokenKey = RedisKeys.tagged(INVITATION_TOKEN_PREFIX, invitation.getInvitationToken());
 
         Map<String, String> invitationData = Map.of(
                 "id", String.valueOf(invitation.getId()),
@@ -87,13 +92,21 @@ public class EmployeeInvitationService {
                 "expiryDate", invitation.getTokenExpiry().toString()
         );
 
-        redisTemplate.opsForHash().putAll(cacheKey, invitationData);
-        redisTemplate.opsForValue().set(tokenKey, "1", INVITATION_EXPIRE_TIME);
+        // Both writes go out in one pipeline flush
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForHash().putAll(cacheKey, invitationData);
+                operations.opsForValue().set(tokenKey, "1", INVITATION_EXPIRE_TIME);
+                return null;
+            }
+        });
     }
 
     private Optional<EmployeeInvitation> getInvitationFromCache(String token) {
-        String cacheKey = INVITATION_CACHE_PREFIX + token;
-        Map<Object, Object> cachedData = redisTemplate.opsForHash().entries(cacheKey);
+        String cacheKey = RedisKeys.tagged(INVITATION_CACHE_PREFIX, token);
+        Map<String, String> cachedData = redisNearCache.getHash(cacheKey);
 
         if (cachedData.isEmpty()) {
             return Optional.empty();
@@ -102,18 +115,18 @@ public class EmployeeInvitationService {
         return Optional.of(buildInvitationFromCache(cachedData));
     }
 
-    private EmployeeInvitation buildInvitationFromCache(Map<Object, Object> cachedData) {
+    private EmployeeInvitation buildInvitationFromCache(Map<String, String> cachedData) {
         Organization organization = organizationService.getOrganizationById(
-                Long.parseLong((String) cachedData.get("organizationId"))
+                Long.parseLong(cachedData.get("organizationId"))
         );
 
         return EmployeeInvitation.builder()
-                .id(Long.parseLong((String) cachedData.get("id")))
-                .email((String) cachedData.get("email"))
+                .id(Long.parseLong(cachedData.get("id")))
+                .email(cachedData.get("email"))
                 .organization(organization)
-                .invitationToken((String) cachedData.get("token"))
-                .status(EmployeeInvitation.InvitationStatus.valueOf((String) cachedData.get("status")))
-                .tokenExpiry(LocalDateTime.parse((String) cachedData.get("expiryDate")))
+                .invitationToken(cachedData.get("token"))
+                .status(EmployeeInvitation.InvitationStatus.valueOf(cachedData.get("status")))
+                .tokenExpiry(LocalDateTime.parse(cachedData.get("expiryDate")))
                 .build();
     }
 
@@ -137,14 +150,14 @@ public class EmployeeInvitationService {
     }
 
     private void updateInvitationCache(EmployeeInvitation invitation) {
-        String cacheKey = INVITATION_CACHE_PREFIX + invitation.getInvitationToken();
+        String cacheKey = RedisKeys.tagged(INVITATION_CACHE_PREFIX, invitation.getInvitationToken());
         redisTemplate.opsForHash().put(cacheKey, "status", invitation.getStatus().toString());
         redisTemplate.opsForHash().put(cacheKey, "acceptedAt", invitation.getAcceptedAt().toString());
     }
 
     private void invalidateInvitation(String token) {
-        String cacheKey = INVITATION_CACHE_PREFIX + token;
-        String tokenKey = INVITATION_TOKEN_PREFIX + token;
+        String cacheKey = RedisKeys.tagged(INVITATION_CACHE_PREFIX, token);
+        String tokenKey = RedisKeys.tagged(INVITATION_TOKEN_PREFIX, token);
 
         redisTemplate.delete(cacheKey);
         redisTemplate.delete(tokenKey);
@@ -188,12 +201,12 @@ public class EmployeeInvitationService {
                 cacheInvitationData(updatedInvitation);
 
                 // Resend email
-                emailService.sendInvitationEmail(updatedInvitation);
+                emailService.queueInvitationEmail(updatedInvitation);
 
                 return updatedInvitation;
             } else {
                 // If invitation is still valid and not close to expiry, just resend the email
-                emailService.sendInvitationEmail(invitation);
+                emailService.queueInvitationEmail(invitation);
                 return invitation;
             }
         }
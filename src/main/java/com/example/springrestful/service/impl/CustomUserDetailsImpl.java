@@ -7,6 +7,7 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.stream.Collectors;
 
 @Getter
@@ -30,6 +31,22 @@ public class CustomUserDetailsImpl implements UserDetails {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Builds a stateless principal from verified access token claims. No password is carried,
+     * so this instance must only be used for request authorization, never for authentication.
+     */
+    public CustomUserDetailsImpl(Long id, String email, boolean emailVerified, List<String> roles) {
+        this.id = id;
+        this.email = email;
+        this.password = null;
+        this.emailVerified = emailVerified;
+        this.authorities = roles.stream()
+                .map(role -> new SimpleGrantedAuthority(
+                        role.startsWith("ROLE_") ? role : "ROLE_" + role
+                ))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return authorities;
@@ -0,0 +1,108 @@
+package com.example.springrestful.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Concurrent map whose entries each carry an expiry time, capped at {@code maxSize} entries.
+ * <p>
+ * Expired entries read as absent and are dropped lazily. When the map is full, expired entries
+ * are purged first. If that is not enough, a map that evicts drops roughly a tenth of the
+ * remaining entries in iteration order, which suits caches; one that does not refuses to add new
+ * keys with an {@link IllegalStateException} until entries expire, which suits state that must
+ * not be forgotten early.
+ */
+public class BoundedExpiringMap<K, V> {
+
+    private final int maxSize;
+    private final boolean evictWhenFull;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    public BoundedExpiringMap(int maxSize) {
+        this(maxSize, true);
+    }
+
+    public BoundedExpiringMap(int maxSize, boolean evictWhenFull) {
+        this.maxSize = maxSize;
+        this.evictWhenFull = evictWhenFull;
+    }
+
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    public void put(K key, V value, long ttlMillis) {
+        ensureCapacity(key);
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Atomically replaces the live value (null when absent or expired) with the result of
+     * {@code update}. A new entry expires after {@code ttlMillis}; an existing one keeps its expiry
+     * unless {@code resetExpiry} is set.
+     */
+    public V update(K key, UnaryOperator<V> update, long ttlMillis, boolean resetExpiry) {
+        ensureCapacity(key);
+        long now = System.currentTimeMillis();
+        Entry<V> updated = entries.compute(key, (k, current) -> {
+            boolean live = current != null && current.expiresAt > now;
+            V value = update.apply(live ? current.value : null);
+            long expiresAt = live && !resetExpiry ? current.expiresAt : now + ttlMillis;
+            return new Entry<>(value, expiresAt);
+        });
+        return updated.value;
+    }
+
+    /**
+     * @return true when an entry, live or expired, was removed
+     */
+    public boolean remove(K key) {
+        return entries.remove(key) != null;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void ensureCapacity(K key) {
+        if (entries.size() < maxSize) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+        if (entries.size() < maxSize || entries.containsKey(key)) {
+            return;
+        }
+        if (!evictWhenFull) {
+            throw new IllegalStateException("Map is full with " + entries.size() + " live entries");
+        }
+
+        Iterator<K> keys = entries.keySet().iterator();
+        int toRemove = entries.size() - maxSize + Math.max(maxSize / 10, 1);
+        while (toRemove-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.springrestful.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Template text split once into static fragments and the named variables between them, so that
+ * rendering is a single pass of appends into a presized buffer.
+ * <p>
+ * Variables are written as {@code open + name + close}, e.g. {@code {{verificationCode}}}.
+ */
+public final class CompiledEmailTemplate {
+
+    private final String[] fragments;
+    private final String[] variables;
+    private final int staticLength;
+
+    private CompiledEmailTemplate(List<String> fragments, List<String> variables) {
+        this.fragments = fragments.toArray(new String[0]);
+        this.variables = variables.toArray(new String[0]);
+        this.staticLength = fragments.stream().mapToInt(String::length).sum();
+    }
+
+    public static CompiledEmailTemplate compile(String source, String open, String close) {
+        List<String> fragments = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int from = 0;
+        int start;
+        while ((start = source.indexOf(open, from)) >= 0) {
+            int end = source.indexOf(close, start + open.length());
+            if (end < 0) {
+                break;
+            }
+            fragments.add(source.substring(from, start));
+            variables.add(source.substring(start + open.length(), end));
+            from = end + close.length();
+        }
+        fragments.add(source.substring(from));
+        return new CompiledEmailTemplate(fragments, variables);
+    }
+
+    public String render(Map<String, String> values) {
+        return render(values, UnaryOperator.identity());
+    }
+
+    /**
+     * Substitutes every variable with its value passed through {@code escape}. Variables without
+     * a value render as empty.
+     */
+    public String render(Map<String, String> values, UnaryOperator<String> escape) {
+        StringBuilder rendered = new StringBuilder(staticLength + variables.length * 32);
+        for (int i = 0; i < variables.length; i++) {
+            rendered.append(fragments[i]);
+            String value = values.get(variables[i]);
+            if (value != null) {
+                rendered.append(escape.apply(value));
+            }
+        }
+        return rendered.append(fragments[variables.length]).toString();
+    }
+}
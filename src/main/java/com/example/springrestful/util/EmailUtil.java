@@ -2,7 +2,6 @@ package com.example.springrestful.util;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.mail.SimpleMailMessage;
-import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.security.SecureRandom;
 import java.util.HashMap;
@@ -11,6 +10,17 @@ import java.util.Map;
 @Slf4j
 public class EmailUtil {
 
+    private static final CompiledEmailTemplate VERIFICATION_TEXT = CompiledEmailTemplate.compile("""
+            Hello,
+            
+            Your verification code is: {{verificationCode}}
+            
+            This code will expire in 10 minutes.
+            
+            If you didn't request this, please ignore this email.
+            SeangDev Application Team
+            """, "{{", "}}");
+
     private EmailUtil() {
         // Private constructor to prevent instantiation
     }
@@ -21,10 +31,6 @@ public class EmailUtil {
         return String.valueOf(code);
     }
 
-    public static String hashVerificationCode(String plainCode, PasswordEncoder passwordEncoder) {
-        return passwordEncoder.encode(plainCode);
-    }
-
     public static SimpleMailMessage createVerificationEmail(String fromEmail, String toEmail, String verificationCode) {
         SimpleMailMessage message = new SimpleMailMessage();
         message.setFrom(fromEmail);
@@ -38,28 +44,32 @@ public class EmailUtil {
         Map<String, String> emailData = new HashMap<>();
         emailData.put("toEmail", toEmail);
         emailData.put("verificationCode", verificationCode);
+        emailData.put("enqueuedAt", String.valueOf(System.currentTimeMillis()));
+        return emailData;
+    }
+
+    public static Map<String, String> createPasswordResetQueueData(String toEmail, String resetToken) {
+        Map<String, String> emailData = new HashMap<>();
+        emailData.put("toEmail", toEmail);
+        emailData.put("resetToken", resetToken);
+        emailData.put("enqueuedAt", String.valueOf(System.currentTimeMillis()));
         return emailData;
     }
 
-    public static Map<String, String> createInvitationQueueData(String email, String content) {
+    public static Map<String, String> createInvitationQueueData(String email, String subject, String content,
+                                                                String textContent) {
         return Map.of(
                 "type", "invitation",
                 "email", email,
-                "content", content
+                "subject", subject,
+                "content", content,
+                "textContent", textContent,
+                "enqueuedAt", String.valueOf(System.currentTimeMillis())
         );
     }
 
     private static String buildVerificationEmailContent(String verificationCode) {
-        return String.format("""
-                Hello,
-                
-                Your verification code is: %s
-                
-                This code will expire in 10 minutes.
-                
-                If you didn't request this, please ignore this email.
-                SeangDev Application Team
-                """, verificationCode);
+        return VERIFICATION_TEXT.render(Map.of("verificationCode", verificationCode));
     }
 
     public static void logEmailError(String message, String email, Exception e) {
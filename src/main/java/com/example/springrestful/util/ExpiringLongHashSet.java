@@ -0,0 +1,203 @@
+package com.example.springrestful.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Open-addressing hash set of non-zero 64-bit values, each with its own expiry time.
+ * <p>
+ * Slots are stored as interleaved {@code [value, expiresAt]} pairs in a single {@link ByteBuffer},
+ * which can live on or off the heap. Lookups never allocate and never lock: a writer stores the
+ * expiry before publishing the value with release semantics, and readers load the value with
+ * acquire semantics. Writes are serialized by the instance monitor.
+ * <p>
+ * Expired entries are treated as absent and are reclaimed when their slot is reused or when the
+ * table is rebuilt by {@link #purgeExpired(long)} or on growth. The table grows up to
+ * {@code maxCapacity} slots and holds at most half as many live entries; beyond that
+ * {@link #add(long, long, long)} refuses new values.
+ */
+public class ExpiringLongHashSet {
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int SLOT_BYTES = 2 * Long.BYTES;
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 16;
+    // 1 GiB of slots
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private final boolean offHeap;
+    private final int maxCapacity;
+    private volatile ByteBuffer table;
+    private int capacity;
+    private int used;
+
+    public ExpiringLongHashSet(int expectedSize, boolean offHeap) {
+        this(expectedSize, offHeap, MAX_CAPACITY);
+    }
+
+    ExpiringLongHashSet(int expectedSize, boolean offHeap, int maxCapacity) {
+        this.offHeap = offHeap;
+        this.maxCapacity = Math.min(tableSizeFor(maxCapacity), MAX_CAPACITY);
+        this.capacity = Math.min(tableSizeFor(Math.max(expectedSize, MIN_CAPACITY / 2) * 2L), this.maxCapacity);
+        this.table = allocate(capacity);
+    }
+
+    /**
+     * True when the value is present and has not expired at {@code now}.
+     */
+    public boolean contains(long value, long now) {
+        if (value == EMPTY) {
+            return false;
+        }
+        ByteBuffer current = table;
+        int mask = current.capacity() / SLOT_BYTES - 1;
+        int slot = mix(value) & mask;
+
+        while (true) {
+            int offset = slot * SLOT_BYTES;
+            long stored = (long) LONGS.getAcquire(current, offset);
+            if (stored == EMPTY) {
+                return false;
+            }
+            if (stored == value) {
+                return (long) LONGS.get(current, offset + Long.BYTES) > now;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Adds the value, or extends its expiry if it is already present.
+     *
+     * @return false when the set is full and the value was not added
+     */
+    public synchronized boolean add(long value, long expiresAt, long now) {
+        if (value == EMPTY || expiresAt <= now) {
+            return true;
+        }
+        if ((used + 1) * 2 > capacity) {
+            if (capacity >= maxCapacity) {
+                // Full: only extending a live value is allowed until purgeExpired() reclaims slots,
+                // rebuilding on every add would scan the whole table each time
+                if (!contains(value, now)) {
+                    return false;
+                }
+            } else {
+                rebuild(capacity * 2, now);
+            }
+        }
+
+        ByteBuffer current = table;
+        int mask = capacity - 1;
+        int slot = mix(value) & mask;
+        int reusable = -1;
+
+        while (true) {
+            int offset = slot * SLOT_BYTES;
+            long stored = (long) LONGS.get(current, offset);
+            if (stored == EMPTY) {
+                break;
+            }
+            if (stored == value) {
+                long existing = (long) LONGS.get(current, offset + Long.BYTES);
+                LONGS.setRelease(current, offset + Long.BYTES, Math.max(existing, expiresAt));
+                return true;
+            }
+            if (reusable < 0 && (long) LONGS.get(current, offset + Long.BYTES) <= now) {
+                reusable = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (reusable >= 0) {
+            // Reusing an expired slot keeps probe chains intact; readers briefly see the old value as expired
+            int offset = reusable * SLOT_BYTES;
+            LONGS.setRelease(current, offset + Long.BYTES, 0L);
+            LONGS.setRelease(current, offset, value);
+            LONGS.setRelease(current, offset + Long.BYTES, expiresAt);
+            return true;
+        }
+
+        int offset = slot * SLOT_BYTES;
+        LONGS.set(current, offset + Long.BYTES, expiresAt);
+        LONGS.setRelease(current, offset, value);
+        used++;
+        return true;
+    }
+
+    /**
+     * Rebuilds the table without expired entries, shrinking it when it is mostly empty.
+     */
+    public synchronized void purgeExpired(long now) {
+        int live = size(now);
+        int target = tableSizeFor(Math.max(live * 4, MIN_CAPACITY));
+        rebuild(Math.min(target, capacity), now);
+    }
+
+    /**
+     * Number of entries that have not expired at {@code now}. Scans the whole table.
+     */
+    public synchronized int size(long now) {
+        int live = 0;
+        ByteBuffer current = table;
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = slot * SLOT_BYTES;
+            if ((long) LONGS.get(current, offset) != EMPTY && (long) LONGS.get(current, offset + Long.BYTES) > now) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    public synchronized int capacity() {
+        return capacity;
+    }
+
+    private void rebuild(int newCapacity, long now) {
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        ByteBuffer fresh = allocate(newCapacity);
+        int mask = newCapacity - 1;
+        int count = 0;
+
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int offset = slot * SLOT_BYTES;
+            long value = (long) LONGS.get(old, offset);
+            long expiresAt = (long) LONGS.get(old, offset + Long.BYTES);
+            if (value == EMPTY || expiresAt <= now) {
+                continue;
+            }
+            int target = mix(value) & mask;
+            while ((long) LONGS.get(fresh, target * SLOT_BYTES) != EMPTY) {
+                target = (target + 1) & mask;
+            }
+            LONGS.set(fresh, target * SLOT_BYTES + Long.BYTES, expiresAt);
+            LONGS.set(fresh, target * SLOT_BYTES, value);
+            count++;
+        }
+
+        this.capacity = newCapacity;
+        this.used = count;
+        this.table = fresh;
+    }
+
+    private ByteBuffer allocate(int slots) {
+        int bytes = slots * SLOT_BYTES;
+        ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(long size) {
+        if (size >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Integer.highestOneBit((int) Math.max(size - 1, 1)) << 1;
+    }
+}
@@ -1,14 +1,25 @@
 package com.example.springrestful.util;
 
+import com.example.springrestful.security.ActiveSession;
+import com.example.springrestful.security.ParsedToken;
+import com.example.springrestful.security.RefreshRotation;
+import com.example.springrestful.security.StoredTokenState;
+import com.example.springrestful.security.TokenGenerationCache;
+import com.example.springrestful.security.TokenState;
+import com.example.springrestful.security.TokenStore;
+import com.example.springrestful.security.UserTokenState;
+import com.example.springrestful.service.impl.CustomUserDetailsImpl;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -16,10 +27,13 @@ import org.springframework.web.util.WebUtils;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Optional;
 import java.util.function.Function;
 
 @Component
@@ -34,12 +48,6 @@ public class JwtUtil {
     @Value("${jwt.refresh-token.expiration}")
     private long refreshTokenExpiration;
 
-    @Value("${jwt.redis.prefix.blacklist}")
-    private String blacklistPrefix;
-
-    @Value("${jwt.redis.prefix.user-sessions}")
-    private String userSessionsPrefix;
-
     // Cookie configuration constants
     private static final String ACCESS_TOKEN_COOKIE_NAME = "access_token";
     private static final String REFRESH_TOKEN_COOKIE_NAME = "refresh_token";
@@ -47,15 +55,37 @@ public class JwtUtil {
     private static final boolean USE_SECURE = true;
     private static final String COOKIE_PATH = "/";
 
-    private final RedisTemplate<String, String> redisTemplate;
+    // Token ids are 128 random bits, URL-safe base64 encoded to 22 characters
+    private static final int TOKEN_ID_BYTES = 16;
+    private static final SecureRandom TOKEN_ID_RANDOM = new SecureRandom();
+    private static final Base64.Encoder TOKEN_ID_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final TokenStore tokenStore;
+    private final TokenGenerationCache tokenGenerationCache;
+
+    // Built once at startup; both are immutable and thread-safe
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+
+    public JwtUtil(TokenStore tokenStore, TokenGenerationCache tokenGenerationCache) {
+        this.tokenStore = tokenStore;
+        this.tokenGenerationCache = tokenGenerationCache;
+    }
 
-    public JwtUtil(RedisTemplate<String, String> redisTemplate) {
-        this.redisTemplate = redisTemplate;
+    @PostConstruct
+    void initSigningKey() {
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
     }
 
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    /**
+     * Verifies the token signature and expiry exactly once and returns an immutable view of it.
+     * Throws a {@link io.jsonwebtoken.JwtException} when the token is malformed, forged or expired.
+     */
+    public ParsedToken parseToken(String token) {
+        return ParsedToken.of(token, extractAllClaims(token));
     }
 
     public String extractUsername(String token) {
@@ -72,15 +102,7 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-    }
-
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        return jwtParser.parseClaimsJws(token).getBody();
     }
 
     // Method to extract token from either Authorization header or Cookie
@@ -136,9 +158,7 @@ public class JwtUtil {
 
     // Overloaded methods to set tokens in cookies with response parameter
     public String generateToken(UserDetails userDetails, HttpServletResponse response) {
-        Map<String, Object> claims = new HashMap<>();
-        String token = createToken(claims, userDetails.getUsername(), accessTokenExpiration);
-        storeUserSession(userDetails.getUsername(), token, accessTokenExpiration);
+        String token = generateToken(userDetails);
 
         // Set the token in a cookie
         setAccessTokenCookie(response, token);
@@ -147,10 +167,7 @@ public class JwtUtil {
     }
 
     public String generateRefreshToken(UserDetails userDetails, HttpServletResponse response) {
-        Map<String, Object> claims = new HashMap<>();
-        claims.put("tokenType", "refresh");
-        String token = createToken(claims, userDetails.getUsername(), refreshTokenExpiration);
-        storeUserSession(userDetails.getUsername(), token, refreshTokenExpiration);
+        String token = generateRefreshToken(userDetails);
 
         // Set the refresh token in a cookie
         setRefreshTokenCookie(response, token);
@@ -160,69 +177,203 @@ public class JwtUtil {
 
     // Original methods to maintain backward compatibility
     public String generateToken(UserDetails userDetails) {
-        Map<String, Object> claims = new HashMap<>();
-        return createToken(claims, userDetails.getUsername(), accessTokenExpiration);
+        return generateToken(userDetails, getUserTokenState(userDetails.getUsername()).getGeneration());
     }
 
     public String generateRefreshToken(UserDetails userDetails) {
+        return generateRefreshToken(userDetails, getUserTokenState(userDetails.getUsername()).getGeneration());
+    }
+
+    /**
+     * Signs an access token for a generation the caller already knows, e.g. the one returned by
+     * {@link #invalidateAllUserSessions(String)}, without looking it up again.
+     */
+    public String generateToken(UserDetails userDetails, long generation) {
+        Map<String, Object> claims = buildPrincipalClaims(userDetails);
+        claims.put(ParsedToken.GENERATION_CLAIM, generation);
+        return createToken(claims, userDetails.getUsername(), accessTokenExpiration, newTokenId());
+    }
+
+    /**
+     * Signs a refresh token and adds it to the user's session index.
+     */
+    public String generateRefreshToken(UserDetails userDetails, long generation) {
+        String tokenId = newTokenId();
+        tokenStore.recordSession(userDetails.getUsername(), tokenId, System.currentTimeMillis() + refreshTokenExpiration);
+        return generateRefreshToken(userDetails, generation, tokenId);
+    }
+
+    /**
+     * Signs a refresh token under a pre-allocated id, used when the id was already registered
+     * as the successor of a rotated token. The session index is left untouched.
+     */
+    public String generateRefreshToken(UserDetails userDetails, long generation, String tokenId) {
+        Map<String, Object> claims = buildPrincipalClaims(userDetails);
+        claims.put(ParsedToken.TOKEN_TYPE_CLAIM, ParsedToken.REFRESH_TOKEN_TYPE);
+        claims.put(ParsedToken.GENERATION_CLAIM, generation);
+        return createToken(claims, userDetails.getUsername(), refreshTokenExpiration, tokenId);
+    }
+
+    /**
+     * Tokens carry the user id, roles and email-verified flag so the authentication
+     * filter can build the principal without loading the user from the database.
+     */
+    private Map<String, Object> buildPrincipalClaims(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
-        claims.put("tokenType", "refresh");
-        return createToken(claims, userDetails.getUsername(), refreshTokenExpiration);
+        if (userDetails instanceof CustomUserDetailsImpl customUserDetails) {
+            claims.put(ParsedToken.USER_ID_CLAIM, customUserDetails.getId());
+            claims.put(ParsedToken.ROLES_CLAIM, customUserDetails.getAuthorities().stream()
+                    .map(GrantedAuthority::getAuthority)
+                    .toList());
+            claims.put(ParsedToken.EMAIL_VERIFIED_CLAIM, customUserDetails.isEmailVerified());
+        }
+        return claims;
+    }
+
+    public String newTokenId() {
+        byte[] bytes = new byte[TOKEN_ID_BYTES];
+        TOKEN_ID_RANDOM.nextBytes(bytes);
+        return TOKEN_ID_ENCODER.encodeToString(bytes);
     }
 
-    private String createToken(Map<String, Object> claims, String subject, long expiration) {
+    private String createToken(Map<String, Object> claims, String subject, long expiration, String tokenId) {
         return Jwts.builder()
                 .setClaims(claims)
+                .setId(tokenId)
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    private void storeUserSession(String username, String token, long expiration) {
-        String sessionKey = userSessionsPrefix + username;
-        redisTemplate.opsForSet().add(sessionKey, token);
-        redisTemplate.expire(sessionKey, expiration, TimeUnit.MILLISECONDS);
+    public Boolean validateToken(String token, UserDetails userDetails) {
+        return validateToken(parseToken(token), userDetails);
     }
 
-    public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) &&
-                !isTokenExpired(token) &&
-                !isTokenBlacklisted(token) &&
-                isValidUserSession(username, token));
+    public Boolean validateToken(ParsedToken token, UserDetails userDetails) {
+        return token.getSubject().equals(userDetails.getUsername()) &&
+                !token.isExpired() &&
+                lookupTokenState(token).isValid();
     }
+    /**
+     * Resolves whether the token is revoked, still belongs to the user's current generation and
+     * carries stale claims. The per-user part is normally served from {@link TokenGenerationCache},
+     * leaving a single blacklist lookup; on a cache miss everything is fetched in one store call.
+     * A token from a newer generation than the cached one was issued after the entry was loaded,
+     * typically on another node before its eviction arrived here, so the state is re-read.
+     */
+    public TokenState lookupTokenState(ParsedToken token) {
+        String username = token.getSubject();
+        boolean legacySession = token.getGeneration() == null;
+
+        Optional<UserTokenState> cached = legacySession ? Optional.empty() : tokenGenerationCache.get(username);
+        if (cached.isPresent() && token.getGeneration() <= cached.get().getGeneration()) {
+            return toTokenState(token, cached.get(), isTokenBlacklisted(token), true);
+        }
 
-    private boolean isValidUserSession(String username, String token) {
-        String sessionKey = userSessionsPrefix + username;
-        return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(sessionKey, token));
+        long loadMarker = tokenGenerationCache.loadMarker(username);
+        StoredTokenState stored = tokenStore.loadTokenState(token);
+        tokenGenerationCache.put(username, stored.getUserState(), loadMarker);
+
+        return toTokenState(token, stored.getUserState(), stored.isBlacklisted(), stored.isLegacySessionMember());
+    }
+
+    /**
+     * Current generation and claims marker of a user, from the local cache when possible.
+     */
+    public UserTokenState getUserTokenState(String username) {
+        Optional<UserTokenState> cached = tokenGenerationCache.get(username);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        long loadMarker = tokenGenerationCache.loadMarker(username);
+        UserTokenState userState = tokenStore.loadUserState(username);
+        tokenGenerationCache.put(username, userState, loadMarker);
+        return userState;
+    }
+
+    private TokenState toTokenState(ParsedToken token, UserTokenState userState,
+                                    boolean blacklisted, boolean legacyMember) {
+        boolean currentGeneration = token.getGeneration() == null
+                ? legacyMember
+                : token.getGeneration() == userState.getGeneration();
+        return new TokenState(blacklisted, currentGeneration, userState.areClaimsStale(token));
     }
 
     public void invalidateToken(String token) {
         if (token == null) return;
+        invalidateToken(parseToken(token));
+    }
 
-        String username = extractUsername(token);
-        Date expiration = extractExpiration(token);
-        long remainingTtl = Math.max((expiration.getTime() - System.currentTimeMillis()), 0);
+    public void invalidateToken(ParsedToken token) {
+        tokenStore.revokeToken(token);
+    }
+
+    /**
+     * Retires a verified refresh token and registers {@code successorTokenId} in one store call.
+     * Tokens issued before generations were introduced go through the regular lookup and
+     * revocation instead, without replay detection.
+     */
+    public RefreshRotation rotateRefreshToken(ParsedToken token, String successorTokenId) {
+        String username = token.getSubject();
+
+        if (token.getGeneration() == null) {
+            TokenState state = lookupTokenState(token);
+            if (!state.isValid()) {
+                return new RefreshRotation(RefreshRotation.Outcome.REVOKED, 0, false);
+            }
+            invalidateToken(token);
+            tokenStore.recordSession(username, successorTokenId, System.currentTimeMillis() + refreshTokenExpiration);
+            return new RefreshRotation(RefreshRotation.Outcome.ROTATED,
+                    getUserTokenState(username).getGeneration(), state.isClaimsStale());
+        }
 
-        // Add to blacklist
-        String blacklistKey = blacklistPrefix + token;
-        redisTemplate.opsForValue().set(blacklistKey, "true", remainingTtl, TimeUnit.MILLISECONDS);
+        RefreshRotation rotation = tokenStore.rotateRefreshToken(token, successorTokenId,
+                System.currentTimeMillis() + refreshTokenExpiration);
+        if (rotation.getOutcome() == RefreshRotation.Outcome.REUSED) {
+            tokenGenerationCache.evict(username);
+        }
+        return rotation;
+    }
 
-        // Remove from user sessions
-        String sessionKey = userSessionsPrefix + username;
-        redisTemplate.opsForSet().remove(sessionKey, token);
+    /**
+     * Signals that the roles or verification state of a user changed, so access tokens issued
+     * before now must no longer be trusted as a principal source and the user is reloaded instead.
+     * The marker only needs to outlive the longest-lived access token.
+     */
+    public void markClaimsStale(String username) {
+        tokenStore.markClaimsStale(username, accessTokenExpiration);
+        tokenGenerationCache.evict(username);
     }
 
-    public void invalidateAllUserSessions(String username) {
-        String sessionKey = userSessionsPrefix + username;
-        redisTemplate.delete(sessionKey);
+    /**
+     * Logs the user out everywhere by moving them to a new token generation. Every token issued
+     * under an older generation fails validation from then on, without tracking tokens one by one.
+     *
+     * @return the new generation, to be embedded in tokens issued right after
+     */
+    public long invalidateAllUserSessions(String username) {
+        long generation = tokenStore.advanceGeneration(username);
+        tokenGenerationCache.evict(username);
+        return generation;
+    }
+
+    public List<ActiveSession> listActiveSessions(String username) {
+        return tokenStore.listActiveSessions(username);
+    }
+
+    public long countActiveSessions(String username) {
+        return tokenStore.countActiveSessions(username);
     }
 
     public boolean isTokenBlacklisted(String token) {
         if (token == null) return false;
-        String blacklistKey = blacklistPrefix + token;
-        return Boolean.TRUE.toString().equals(redisTemplate.opsForValue().get(blacklistKey));
+        return isTokenBlacklisted(parseToken(token));
+    }
+
+    public boolean isTokenBlacklisted(ParsedToken token) {
+        return tokenStore.isBlacklisted(token);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,30 @@
+package com.example.springrestful.util;
+
+/**
+ * Builds Redis keys with a cluster hash tag.
+ * <p>
+ * Only the part between braces is hashed in Redis Cluster, so every key tagged with the same
+ * user or invitation lands in the same slot and scripts touching several of them keep working
+ * once the keyspace is sharded. Tags are the natural owner of the key: the username (email) for
+ * auth state, the invitation token for invitation state.
+ */
+public class RedisKeys {
+
+    private RedisKeys() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * {@code prefix{tag}}
+     */
+    public static String tagged(String prefix, String tag) {
+        return prefix + "{" + tag + "}";
+    }
+
+    /**
+     * {@code prefix{tag}:suffix}
+     */
+    public static String tagged(String prefix, String tag, String suffix) {
+        return prefix + "{" + tag + "}:" + suffix;
+    }
+}
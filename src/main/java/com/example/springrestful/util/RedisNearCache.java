@@ -0,0 +1,323 @@
+package com.example.springrestful.util;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Opt-in near cache for hot, rarely changing Redis keys, backed by Redis server-assisted
+ * client-side caching.
+ * <p>
+ * Reads go through a dedicated RESP3 connection with {@code CLIENT TRACKING} enabled, so the
+ * server remembers every key this node has read (including keys that did not exist) and pushes an
+ * {@code invalidate} message as soon as one of them is written, deleted or expires. Entries are
+ * evicted on those pushes, after a TTL as a safety net, and when the cache grows beyond
+ * {@code max-size}. When tracking is lost on a reconnect the whole cache is dropped and tracking is
+ * re-enabled before anything is cached again.
+ * <p>
+ * The tracking connection uses the same client resources, socket, timeout and TLS settings as the
+ * connection factories in {@link com.example.springrestful.config.RedisConfig}.
+ * <p>
+ * When disabled, or when tracking cannot be enabled, every read goes straight to the primary
+ * Redis node through the auth template.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisNearCache {
+
+    @Qualifier("authRedisTemplate")
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ClientResources clientResources;
+    private final ClientOptions clientOptions;
+
+    @Value("${redis.near-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${redis.near-cache.max-size}")
+    private int maxSize;
+
+    @Value("${redis.near-cache.ttl-seconds}")
+    private long ttlSeconds;
+
+    @Value("${spring.data.redis.mode:standalone}")
+    private String redisMode;
+
+    @Value("${spring.data.redis.host}")
+    private String redisHost;
+
+    @Value("${spring.data.redis.port}")
+    private int redisPort;
+
+    @Value("${spring.data.redis.username}")
+    private String redisUsername;
+
+    @Value("${spring.data.redis.password}")
+    private String redisPassword;
+
+    @Value("${spring.data.redis.ssl.enabled:false}")
+    private boolean redisSsl;
+
+    @Value("${spring.data.redis.timeout:2s}")
+    private Duration commandTimeout;
+
+    // Values are wrapped so that keys found missing are cached as well
+    private BoundedExpiringMap<String, Optional<Object>> entries;
+
+    // Bumped on every invalidation; a load that raced with an invalidation must not repopulate the cache
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private RedisClient client;
+    private StatefulRedisConnection<String, String> connection;
+    private volatile boolean tracking;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter invalidated;
+
+    @PostConstruct
+    void start() {
+        hits = Counter.builder("redis.near_cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("redis.near_cache.requests").tag("result", "miss").register(meterRegistry);
+        invalidated = Counter.builder("redis.near_cache.invalidations").register(meterRegistry);
+        entries = new BoundedExpiringMap<>(maxSize);
+        Gauge.builder("redis.near_cache.size", entries, BoundedExpiringMap::size).register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+        if (!"standalone".equals(redisMode)) {
+            // Tracking is per server connection; sharded or failover setups would need one per node
+            log.warn("⚠️ Redis near cache only supports standalone mode, reading through to Redis");
+            return;
+        }
+
+        RedisURI.Builder uri = RedisURI.builder()
+                .withHost(redisHost)
+                .withPort(redisPort)
+                .withSsl(redisSsl)
+                .withTimeout(commandTimeout);
+        if (redisUsername != null && !redisUsername.isBlank()) {
+            uri.withAuthentication(redisUsername, redisPassword);
+        } else if (redisPassword != null && !redisPassword.isBlank()) {
+            uri.withPassword(redisPassword.toCharArray());
+        }
+
+        try {
+            client = RedisClient.create(clientResources, uri.build());
+            // Invalidation pushes need RESP3
+            client.setOptions(clientOptions.mutate().protocolVersion(ProtocolVersion.RESP3).build());
+            client.addListener(new RedisConnectionStateListener() {
+                @Override
+                public void onRedisConnected(RedisChannelHandler<?, ?> channel, SocketAddress address) {
+                    // Tracking state lives on the server connection and does not survive a reconnect
+                    tracking = false;
+                    invalidateAll();
+                }
+
+                @Override
+                public void onRedisDisconnected(RedisChannelHandler<?, ?> channel) {
+                    tracking = false;
+                    invalidateAll();
+                }
+            });
+
+            connection = client.connect();
+            connection.addListener(this::onPushMessage);
+            enableTracking();
+            log.info("🗄️ Redis near cache enabled (max {} entries, {} s TTL)", maxSize, ttlSeconds);
+        } catch (Exception e) {
+            log.warn("⚠️ Redis near cache unavailable, reading through to Redis: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (connection != null) {
+            connection.close();
+        }
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * {@code GET key}, served locally while the key is unchanged. Returns null for missing keys.
+     */
+    public String get(String key) {
+        if (!isTracking()) {
+            RedisOperationCounter.increment();
+            return redisTemplate.opsForValue().get(key);
+        }
+        return (String) load(key, () -> connection.sync().get(key));
+    }
+
+    /**
+     * {@code MGET keys}: values of the keys that are unchanged are served locally, the others are read
+     * in a single command. Returns null for missing keys. The keys must share a slot in cluster mode.
+     */
+    public List<String> multiGet(List<String> keys) {
+        if (keys.size() == 1) {
+            return Collections.singletonList(get(keys.get(0)));
+        }
+        if (!isTracking()) {
+            RedisOperationCounter.increment();
+            List<String> values = redisTemplate.opsForValue().multiGet(keys);
+            return values == null ? Collections.nCopies(keys.size(), null) : values;
+        }
+
+        List<String> values = new ArrayList<>(keys.size());
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            Optional<Object> cached = entries.get(key);
+            if (cached == null) {
+                missing.add(key);
+            } else {
+                hits.increment();
+            }
+            values.add(cached == null ? null : (String) cached.orElse(null));
+        }
+        if (missing.isEmpty()) {
+            return values;
+        }
+
+        misses.increment(missing.size());
+        long marker = invalidations.get();
+        RedisOperationCounter.increment();
+        Map<String, String> loaded = new HashMap<>();
+        connection.sync().mget(missing.toArray(new String[0]))
+                .forEach(value -> loaded.put(value.getKey(), value.getValueOrElse(null)));
+
+        boolean cacheable = invalidations.get() == marker && tracking;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (loaded.containsKey(key)) {
+                String value = loaded.get(key);
+                values.set(i, value);
+                if (cacheable) {
+                    entries.put(key, Optional.ofNullable(value), ttlSeconds * 1000);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * {@code HGETALL key}, served locally while the hash is unchanged. Returns an empty map for
+     * missing keys.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getHash(String key) {
+        if (!isTracking()) {
+            RedisOperationCounter.increment();
+            Map<String, String> hash = new LinkedHashMap<>();
+            redisTemplate.opsForHash().entries(key).forEach((field, value) -> hash.put((String) field, (String) value));
+            return hash;
+        }
+        return (Map<String, String>) load(key, () -> Collections.unmodifiableMap(connection.sync().hgetall(key)));
+    }
+
+    private Object load(String key, Supplier<Object> loader) {
+        Optional<Object> cached = entries.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached.orElse(null);
+        }
+
+        misses.increment();
+        long marker = invalidations.get();
+        RedisOperationCounter.increment();
+        Object value = loader.get();
+
+        if (invalidations.get() == marker && tracking) {
+            entries.put(key, Optional.ofNullable(value), ttlSeconds * 1000);
+        }
+        return value;
+    }
+
+    private boolean isTracking() {
+        if (connection == null) {
+            return false;
+        }
+        if (!tracking) {
+            enableTracking();
+        }
+        return tracking;
+    }
+
+    private synchronized void enableTracking() {
+        if (tracking) {
+            return;
+        }
+        try {
+            connection.sync().clientTracking(TrackingArgs.Builder.enabled());
+            invalidateAll();
+            tracking = true;
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to enable Redis client tracking: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Invalidation pushes carry the list of changed keys, or null when the server flushed its
+     * tracking table.
+     */
+    private void onPushMessage(PushMessage message) {
+        if (!"invalidate".equals(message.getType())) {
+            return;
+        }
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        Object keys = content.size() > 1 ? content.get(1) : null;
+
+        if (!(keys instanceof List<?> changed)) {
+            invalidateAll();
+            return;
+        }
+        invalidations.incrementAndGet();
+        for (Object key : changed) {
+            String name = key instanceof ByteBuffer buffer ? StringCodec.UTF8.decodeKey(buffer) : String.valueOf(key);
+            if (entries.remove(name)) {
+                invalidated.increment();
+            }
+        }
+    }
+
+    private void invalidateAll() {
+        invalidations.incrementAndGet();
+        invalidated.increment(entries.size());
+        entries.clear();
+    }
+}
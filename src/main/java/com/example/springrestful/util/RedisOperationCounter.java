@@ -0,0 +1,34 @@
+package com.example.springrestful.util;
+
+/**
+ * Counts Redis round trips made by the current request thread, so the cost of the
+ * authentication path can be observed per request.
+ */
+public class RedisOperationCounter {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    private RedisOperationCounter() {
+        // Private constructor to prevent instantiation
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static void increment() {
+        COUNT.get()[0]++;
+    }
+
+    public static void add(int operations) {
+        COUNT.get()[0] += operations;
+    }
+
+    public static int get() {
+        return COUNT.get()[0];
+    }
+
+    public static void clear() {
+        COUNT.remove();
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.springrestful.util;
+
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.protocol.RedisCommand;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-thread deadline for Redis commands.
+ * <p>
+ * While a budget is set, every command issued by the current thread times out when the budget
+ * runs out instead of after the connection's default command timeout. Lettuce asks the
+ * {@link #timeoutSource(Duration) timeout source} for the timeout when the command is written,
+ * which happens on the calling thread.
+ */
+public class RedisTimeoutBudget {
+
+    private static final ThreadLocal<long[]> DEADLINE = ThreadLocal.withInitial(() -> new long[1]);
+
+    // Keeps an exhausted budget from producing a zero timeout, which Lettuce treats as "no timeout"
+    private static final long MIN_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private RedisTimeoutBudget() {
+        // Private constructor to prevent instantiation
+    }
+
+    public static void start(Duration budget) {
+        DEADLINE.get()[0] = System.nanoTime() + budget.toNanos();
+    }
+
+    public static void clear() {
+        DEADLINE.get()[0] = 0;
+    }
+
+    /**
+     * Lettuce timeout source applying the current thread's budget, or {@code defaultTimeout}
+     * when none is set.
+     */
+    public static TimeoutOptions.TimeoutSource timeoutSource(Duration defaultTimeout) {
+        long defaultNanos = defaultTimeout.toNanos();
+        return new TimeoutOptions.TimeoutSource() {
+            @Override
+            public long getTimeout(RedisCommand<?, ?, ?> command) {
+                long deadline = DEADLINE.get()[0];
+                if (deadline == 0) {
+                    return defaultNanos;
+                }
+                return Math.min(Math.max(deadline - System.nanoTime(), MIN_TIMEOUT_NANOS), defaultNanos);
+            }
+
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.NANOSECONDS;
+            }
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.springrestful.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CalibratedBCryptPasswordEncoderTest {
+
+    private static final String SALT_AND_HASH = "abcdefghijklmnopqrstuvwxyz0123456789ABCDEFGHIJKLMNOPQRS";
+
+    @Test
+    void calibratedEncoderOnlyRaisesHashesOrLowersThoseAboveTheCeiling() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(11, 14);
+
+        assertThat(encoder.upgradeEncoding(hashWithCost(10))).isTrue();
+        assertThat(encoder.upgradeEncoding(hashWithCost(11))).isFalse();
+        // Left by a faster node of the same fleet
+        assertThat(encoder.upgradeEncoding(hashWithCost(13))).isFalse();
+        assertThat(encoder.upgradeEncoding(hashWithCost(15))).isTrue();
+    }
+
+    @Test
+    void pinnedStrengthReencodesEveryOtherCost() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(12);
+
+        assertThat(encoder.upgradeEncoding(hashWithCost(11))).isTrue();
+        assertThat(encoder.upgradeEncoding(hashWithCost(12))).isFalse();
+        assertThat(encoder.upgradeEncoding(hashWithCost(13))).isTrue();
+    }
+
+    @Test
+    void reencodesHashesThatAreNotBCrypt() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(10, 14);
+
+        assertThat(encoder.upgradeEncoding("plain")).isTrue();
+        assertThat(encoder.upgradeEncoding("")).isFalse();
+    }
+
+    @Test
+    void calibrationStaysWithinBoundsAndProducesMatchingHashes() {
+        CalibratedBCryptPasswordEncoder encoder = CalibratedBCryptPasswordEncoder.calibrate(1, 4, 6);
+
+        assertThat(encoder.getStrength()).isBetween(4, 6);
+        assertThat(encoder.getMaxStrength()).isEqualTo(6);
+        String hash = encoder.encode("secret");
+        assertThat(hash).startsWith(String.format("$2a$%02d$", encoder.getStrength()));
+        assertThat(encoder.matches("secret", hash)).isTrue();
+        assertThat(encoder.upgradeEncoding(hash)).isFalse();
+    }
+
+    private static String hashWithCost(int cost) {
+        return String.format("$2a$%02d$%s", cost, SALT_AND_HASH);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.springrestful.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.springrestful.security.EmailLane.BULK;
+import static com.example.springrestful.security.EmailLane.TRANSACTIONAL;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailDispatchExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+    private static final int MAX_IN_FLIGHT = 64;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmailDispatchExecutor executor;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    @Test
+    void interleavesLanesByWeightWhileBothHaveEmailsWaiting() throws InterruptedException {
+        executor = start(1, 4, 1, 1_000);
+        List<EmailLane> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(20);
+        CountDownLatch gate = occupyWorker(TRANSACTIONAL);
+
+        for (int i = 0; i < 10; i++) {
+            dispatch(BULK, () -> {
+                order.add(BULK);
+                done.countDown();
+            });
+            dispatch(TRANSACTIONAL, () -> {
+                order.add(TRANSACTIONAL);
+                done.countDown();
+            });
+        }
+        gate.countDown();
+
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).containsExactly(
+                TRANSACTIONAL, TRANSACTIONAL, BULK, TRANSACTIONAL, TRANSACTIONAL,
+                TRANSACTIONAL, TRANSACTIONAL, BULK, TRANSACTIONAL, TRANSACTIONAL,
+                TRANSACTIONAL, TRANSACTIONAL, BULK, BULK, BULK,
+                BULK, BULK, BULK, BULK, BULK);
+    }
+
+    @Test
+    void laneAtItsConcurrencyLimitLeavesWorkersToTheOtherLane() throws InterruptedException {
+        executor = start(4, 4, 2, 1_000);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch bulkStarted = new CountDownLatch(2);
+        CountDownLatch bulkGate = new CountDownLatch(1);
+        CountDownLatch bulkDone = new CountDownLatch(5);
+
+        for (int i = 0; i < 5; i++) {
+            dispatch(BULK, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                bulkStarted.countDown();
+                await(bulkGate);
+                running.decrementAndGet();
+                bulkDone.countDown();
+            });
+        }
+        assertThat(bulkStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+        CountDownLatch transactionalDone = new CountDownLatch(1);
+        dispatch(TRANSACTIONAL, transactionalDone::countDown);
+        assertThat(transactionalDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(running.get()).isEqualTo(2);
+
+        bulkGate.countDown();
+        assertThat(bulkDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxRunning.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shutdownHandsBackEmailsStillWaitingForAWorker() throws InterruptedException {
+        executor = start(1, 4, 1, 200);
+        occupyWorker(TRANSACTIONAL);
+        AtomicInteger sent = new AtomicInteger();
+        AtomicInteger abandoned = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertThat(executor.tryReserve(BULK)).isTrue();
+            executor.dispatch(BULK, () -> sent.incrementAndGet() > 0, abandoned::incrementAndGet);
+        }
+
+        executor.stop();
+
+        assertThat(abandoned.get()).isEqualTo(3);
+        assertThat(sent.get()).isZero();
+        assertThat(inFlight(BULK)).isZero();
+        assertThat(executor.tryReserve(BULK)).isFalse();
+        assertThat(executor.dispatch(BULK, () -> true, abandoned::incrementAndGet)).isFalse();
+        assertThat(abandoned.get()).isEqualTo(3);
+    }
+
+    @Test
+    void shutdownSendsWaitingEmailsWhenWorkersFinishInTime() throws InterruptedException {
+        executor = start(1, 4, 1, 5_000);
+        CountDownLatch gate = occupyWorker(TRANSACTIONAL);
+        AtomicInteger sent = new AtomicInteger();
+        AtomicInteger abandoned = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertThat(executor.tryReserve(BULK)).isTrue();
+            executor.dispatch(BULK, () -> sent.incrementAndGet() > 0, abandoned::incrementAndGet);
+        }
+
+        gate.countDown();
+        executor.stop();
+
+        assertThat(sent.get()).isEqualTo(3);
+        assertThat(abandoned.get()).isZero();
+        assertThat(inFlight(BULK)).isZero();
+    }
+
+    private EmailDispatchExecutor start(int workers, int transactionalWeight, int bulkMaxConcurrency,
+                                        long shutdownTimeoutMs) {
+        EmailDispatchExecutor dispatchExecutor = new EmailDispatchExecutor(meterRegistry);
+        ReflectionTestUtils.setField(dispatchExecutor, "workers", workers);
+        ReflectionTestUtils.setField(dispatchExecutor, "shutdownTimeoutMs", shutdownTimeoutMs);
+        ReflectionTestUtils.setField(dispatchExecutor, "transactionalWeight", transactionalWeight);
+        ReflectionTestUtils.setField(dispatchExecutor, "transactionalMaxInFlight", MAX_IN_FLIGHT);
+        ReflectionTestUtils.setField(dispatchExecutor, "transactionalMaxConcurrency", workers);
+        ReflectionTestUtils.setField(dispatchExecutor, "transactionalSloMs", 60_000L);
+        ReflectionTestUtils.setField(dispatchExecutor, "bulkWeight", 1);
+        ReflectionTestUtils.setField(dispatchExecutor, "bulkMaxInFlight", MAX_IN_FLIGHT);
+        ReflectionTestUtils.setField(dispatchExecutor, "bulkMaxConcurrency", bulkMaxConcurrency);
+        ReflectionTestUtils.setField(dispatchExecutor, "bulkSloMs", 60_000L);
+        dispatchExecutor.start();
+        return dispatchExecutor;
+    }
+
+    // Keeps a worker busy until the returned gate opens, so later emails queue up behind it
+    private CountDownLatch occupyWorker(EmailLane lane) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        dispatch(lane, () -> {
+            started.countDown();
+            await(gate);
+        });
+        assertThat(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        return gate;
+    }
+
+    private void dispatch(EmailLane lane, Runnable send) {
+        assertThat(executor.tryReserve(lane)).isTrue();
+        assertThat(executor.dispatch(lane, () -> {
+            send.run();
+            return true;
+        }, () -> {
+        })).isTrue();
+    }
+
+    private double inFlight(EmailLane lane) {
+        return meterRegistry.get("email.dispatch.in_flight").tag("lane", lane.tag()).gauge().value();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.springrestful.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HmacVerificationCodeHasherTest {
+
+    private static final String JWT_SECRET = "jwt-secret-that-is-at-least-32-bytes-long";
+
+    private final HmacVerificationCodeHasher hasher = new HmacVerificationCodeHasher("code-secret", JWT_SECRET);
+
+    @Test
+    void matchesOnlyTheCodeThatWasHashed() {
+        String stored = hasher.hash("123456");
+
+        assertThat(stored).startsWith("{hmac}");
+        assertThat(hasher.matches("123456", stored)).isTrue();
+        assertThat(hasher.matches("123457", stored)).isFalse();
+        assertThat(hasher.matches(null, stored)).isFalse();
+    }
+
+    @Test
+    void rejectsHashesMadeWithAnotherKeyOrTamperedWith() {
+        String foreign = new HmacVerificationCodeHasher("other-secret", JWT_SECRET).hash("123456");
+
+        assertThat(hasher.matches("123456", foreign)).isFalse();
+        assertThat(hasher.matches("123456", "{hmac}not base64!")).isFalse();
+        assertThat(hasher.matches("123456", "{hmac}")).isFalse();
+    }
+
+    @Test
+    void leavesOtherSchemesToTheirOwnHasher() {
+        assertThat(hasher.supports("$2a$10$abcdefghijklmnopqrstuv")).isFalse();
+        assertThat(hasher.supports(null)).isFalse();
+        assertThat(hasher.matches("123456", "$2a$10$abcdefghijklmnopqrstuv")).isFalse();
+    }
+
+    @Test
+    void refusesAMissingSecretOrOneSharedWithTheJwtKey() {
+        assertThatThrownBy(() -> new HmacVerificationCodeHasher("", JWT_SECRET))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new HmacVerificationCodeHasher(JWT_SECRET, JWT_SECRET))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
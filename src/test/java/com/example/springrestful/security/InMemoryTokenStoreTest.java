@@ -0,0 +1,99 @@
+package com.example.springrestful.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryTokenStoreTest {
+
+    private static final int MAX_ENTRIES = 4;
+    private static final long REFRESH_TTL = 60_000;
+
+    private InMemoryTokenStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryTokenStore();
+        ReflectionTestUtils.setField(store, "maxEntries", MAX_ENTRIES);
+        ReflectionTestUtils.setField(store, "refreshTokenExpiration", REFRESH_TTL);
+        store.init();
+    }
+
+    @Test
+    void refusesRevocationsWhenFullInsteadOfForgettingEarlierOnes() {
+        ParsedToken[] revoked = new ParsedToken[MAX_ENTRIES];
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            revoked[i] = token("user" + i, 0L, false);
+            store.revokeToken(revoked[i]);
+        }
+
+        assertThatThrownBy(() -> store.revokeToken(token("other", 0L, false)))
+                .isInstanceOf(IllegalStateException.class);
+
+        for (ParsedToken token : revoked) {
+            assertThat(store.isBlacklisted(token)).isTrue();
+        }
+    }
+
+    @Test
+    void refusesNewGenerationsWhenFullInsteadOfResettingEarlierOnes() {
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            store.advanceGeneration("user" + i);
+            store.advanceGeneration("user" + i);
+        }
+
+        assertThatThrownBy(() -> store.advanceGeneration("other")).isInstanceOf(IllegalStateException.class);
+
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            assertThat(store.loadUserState("user" + i).getGeneration()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void rotatedRefreshTokenIsDetectedOnReplay() {
+        store.advanceGeneration("alice");
+        ParsedToken refresh = token("alice", 1L, true);
+
+        RefreshRotation first = store.rotateRefreshToken(refresh, "successor", System.currentTimeMillis() + REFRESH_TTL);
+        RefreshRotation replay = store.rotateRefreshToken(refresh, "again", System.currentTimeMillis() + REFRESH_TTL);
+
+        assertThat(first.getOutcome()).isEqualTo(RefreshRotation.Outcome.ROTATED);
+        assertThat(replay.getOutcome()).isEqualTo(RefreshRotation.Outcome.REUSED);
+        assertThat(store.loadUserState("alice").getGeneration()).isEqualTo(2);
+    }
+
+    @Test
+    void refreshTokenFromOlderGenerationIsStale() {
+        store.advanceGeneration("alice");
+        store.advanceGeneration("alice");
+
+        RefreshRotation rotation = store.rotateRefreshToken(token("alice", 1L, true), "successor",
+                System.currentTimeMillis() + REFRESH_TTL);
+
+        assertThat(rotation.getOutcome()).isEqualTo(RefreshRotation.Outcome.STALE_GENERATION);
+    }
+
+    private static ParsedToken token(String subject, Long generation, boolean refresh) {
+        byte[] id = new byte[12];
+        ThreadLocalRandom.current().nextBytes(id);
+        Claims claims = Jwts.claims();
+        claims.setSubject(subject);
+        claims.setId(Base64.getUrlEncoder().withoutPadding().encodeToString(id));
+        claims.setIssuedAt(new Date());
+        claims.setExpiration(new Date(System.currentTimeMillis() + REFRESH_TTL));
+        claims.put(ParsedToken.GENERATION_CLAIM, generation);
+        if (refresh) {
+            claims.put(ParsedToken.TOKEN_TYPE_CLAIM, ParsedToken.REFRESH_TOKEN_TYPE);
+        }
+        return ParsedToken.of("token", claims);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.service.impl.CustomUserDetailsImpl;
+import com.example.springrestful.util.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtAuthenticationFilterTest {
+
+    private static final String USERNAME = "alice@example.com";
+    private static final CustomUserDetailsImpl USER = new CustomUserDetailsImpl(7L, USERNAME, true, List.of("USER"));
+
+    private JwtUtil jwtUtil;
+    private JwtAuthenticationFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+        ReflectionTestUtils.setField(tokenStore, "maxEntries", 1000);
+        ReflectionTestUtils.setField(tokenStore, "refreshTokenExpiration", 600_000L);
+        tokenStore.init();
+
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        TokenGenerationCache tokenGenerationCache =
+                new TokenGenerationCache(beans.getBeanProvider(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(tokenGenerationCache, "maxSize", 1000);
+        ReflectionTestUtils.setField(tokenGenerationCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(tokenGenerationCache, "maxStaleSeconds", 3600L);
+        tokenGenerationCache.subscribe();
+
+        jwtUtil = new JwtUtil(tokenStore, tokenGenerationCache);
+        ReflectionTestUtils.setField(jwtUtil, "secret", "test-secret-that-is-at-least-32-bytes-long");
+        ReflectionTestUtils.setField(jwtUtil, "accessTokenExpiration", 60_000L);
+        ReflectionTestUtils.setField(jwtUtil, "refreshTokenExpiration", 600_000L);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "initSigningKey");
+
+        TokenStateCircuitBreaker breaker = new TokenStateCircuitBreaker(jwtUtil, tokenGenerationCache,
+                beans.getBeanProvider(RevokedTokenReplica.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(breaker, "timeoutMs", 150L);
+        ReflectionTestUtils.setField(breaker, "failureThreshold", 5);
+        ReflectionTestUtils.setField(breaker, "openDurationMs", 5000L);
+        ReflectionTestUtils.setField(breaker, "fallbackPolicy", TokenStateCircuitBreaker.FallbackPolicy.FAIL_CLOSED);
+        ReflectionTestUtils.setField(breaker, "acceptRecentMaxAgeSeconds", 120L);
+        breaker.registerMetrics();
+
+        // Tokens here carry fresh principal claims, so the database must never be asked
+        filter = new JwtAuthenticationFilter(jwtUtil, username -> {
+            throw new UsernameNotFoundException(username);
+        }, breaker);
+        ReflectionTestUtils.setField(filter, "claimsPrincipalEnabled", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void authenticatesAccessTokenFromItsClaims() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = filter(jwtUtil.generateToken(USER), "/api/v1/employees", chain);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo(USERNAME);
+    }
+
+    @Test
+    void rejectsRefreshTokenPresentedAsAccessToken() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = filter(jwtUtil.generateRefreshToken(USER), "/api/v1/employees", chain);
+
+        assertThat(response.getStatus()).isEqualTo(401);
+        assertThat(chain.getRequest()).isNull();
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    void leavesRefreshTokensToTheRefreshEndpoint() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = filter(jwtUtil.generateRefreshToken(USER), "/api/v1/auth/refresh-token", chain);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    void rejectsRevokedAccessToken() throws Exception {
+        String token = jwtUtil.generateToken(USER);
+        jwtUtil.invalidateToken(token);
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = filter(token, "/api/v1/employees", chain);
+
+        assertThat(response.getStatus()).isEqualTo(401);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void rejectsAccessTokenFromRetiredGeneration() throws Exception {
+        String token = jwtUtil.generateToken(USER);
+        jwtUtil.invalidateAllUserSessions(USERNAME);
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = filter(token, "/api/v1/employees", chain);
+
+        assertThat(response.getStatus()).isEqualTo(401);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void replayedRefreshTokenRevokesTheSessionFamily() throws Exception {
+        ParsedToken refresh = jwtUtil.parseToken(jwtUtil.generateRefreshToken(USER));
+        String successorId = jwtUtil.newTokenId();
+        RefreshRotation rotation = jwtUtil.rotateRefreshToken(refresh, successorId);
+        assertThat(rotation.getOutcome()).isEqualTo(RefreshRotation.Outcome.ROTATED);
+        String successorAccess = jwtUtil.generateToken(USER, rotation.getGeneration());
+        ParsedToken successor = jwtUtil.parseToken(
+                jwtUtil.generateRefreshToken(USER, rotation.getGeneration(), successorId));
+
+        RefreshRotation replay = jwtUtil.rotateRefreshToken(refresh, jwtUtil.newTokenId());
+
+        assertThat(replay.getOutcome()).isEqualTo(RefreshRotation.Outcome.REUSED);
+        assertThat(jwtUtil.rotateRefreshToken(successor, jwtUtil.newTokenId()).getOutcome())
+                .isEqualTo(RefreshRotation.Outcome.STALE_GENERATION);
+        assertThat(filter(successorAccess, "/api/v1/employees", new MockFilterChain()).getStatus()).isEqualTo(401);
+    }
+
+    @Test
+    void revokedRefreshTokenIsNotRotated() {
+        ParsedToken refresh = jwtUtil.parseToken(jwtUtil.generateRefreshToken(USER));
+        jwtUtil.invalidateToken(refresh);
+
+        RefreshRotation rotation = jwtUtil.rotateRefreshToken(refresh, jwtUtil.newTokenId());
+
+        assertThat(rotation.getOutcome()).isEqualTo(RefreshRotation.Outcome.REVOKED);
+        assertThat(rotation.isRotated()).isFalse();
+    }
+
+    private MockHttpServletResponse filter(String token, String path, MockFilterChain chain) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.exception.PasswordHashingBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingExecutorTest {
+
+    private static final long WAIT_TIMEOUT_MS = 100;
+
+    private PasswordHashingExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new PasswordHashingExecutor(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(executor, "poolSize", 1);
+        ReflectionTestUtils.setField(executor, "queueCapacity", 1);
+        ReflectionTestUtils.setField(executor, "waitTimeoutMs", WAIT_TIMEOUT_MS);
+        ReflectionTestUtils.setField(executor, "retryAfterSeconds", 2L);
+        executor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.stop();
+    }
+
+    @Test
+    void hashTakingLongerThanTheWaitBudgetStillCompletes() {
+        String hash = executor.execute("encode", () -> {
+            Thread.sleep(WAIT_TIMEOUT_MS * 3);
+            return "hash";
+        });
+
+        assertThat(hash).isEqualTo("hash");
+    }
+
+    @Test
+    void hashStillWaitingForAWorkerIsRefusedAndNeverRuns() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> executor.execute("matches", () -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        assertThatThrownBy(() -> executor.execute("matches", () -> queuedRan.getAndSet(true)))
+                .isInstanceOf(PasswordHashingBusyException.class);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+        // The worker is free again and the refused hash was dropped from the queue
+        assertThat(executor.execute("matches", () -> true)).isTrue();
+        assertThat(queuedRan).isFalse();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.springrestful.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenGenerationCacheTest {
+
+    private TokenGenerationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new TokenGenerationCache(
+                new StaticListableBeanFactory().getBeanProvider(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(cache, "maxStaleSeconds", 3600L);
+        cache.subscribe();
+    }
+
+    @Test
+    void loadRacingWithAnEvictionOfTheSameUserIsDiscarded() {
+        long marker = cache.loadMarker("alice");
+        cache.evict("alice");
+
+        cache.put("alice", new UserTokenState(1, 0), marker);
+
+        assertThat(cache.get("alice")).isEmpty();
+        assertThat(cache.peek("alice")).isEmpty();
+    }
+
+    @Test
+    void evictionsOfOtherUsersDoNotDiscardALoad() {
+        long marker = cache.loadMarker("alice");
+        cache.evict("bob");
+        cache.onMessage(new DefaultMessage("token_state_changed".getBytes(StandardCharsets.UTF_8),
+                "carol".getBytes(StandardCharsets.UTF_8)), null);
+
+        cache.put("alice", new UserTokenState(3, 0), marker);
+
+        assertThat(cache.get("alice")).hasValueSatisfying(state -> assertThat(state.getGeneration()).isEqualTo(3));
+    }
+
+    @Test
+    void loadAfterAnEvictionIsCached() {
+        cache.evict("alice");
+        long marker = cache.loadMarker("alice");
+
+        cache.put("alice", new UserTokenState(2, 0), marker);
+
+        assertThat(cache.get("alice")).hasValueSatisfying(state -> assertThat(state.getGeneration()).isEqualTo(2));
+    }
+}
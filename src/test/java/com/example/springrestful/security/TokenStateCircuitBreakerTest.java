@@ -0,0 +1,157 @@
+package com.example.springrestful.security;
+
+import com.example.springrestful.service.impl.CustomUserDetailsImpl;
+import com.example.springrestful.util.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenStateCircuitBreakerTest {
+
+    private static final String USERNAME = "alice@example.com";
+    private static final CustomUserDetailsImpl USER = new CustomUserDetailsImpl(7L, USERNAME, true, List.of("USER"));
+
+    private final FailingTokenStore tokenStore = new FailingTokenStore();
+    private final Set<String> revokedIds = new HashSet<>();
+    private final StaticListableBeanFactory beans = new StaticListableBeanFactory();
+    private TokenGenerationCache tokenGenerationCache;
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(tokenStore, "maxEntries", 1000);
+        ReflectionTestUtils.setField(tokenStore, "refreshTokenExpiration", 600_000L);
+        tokenStore.init();
+
+        tokenGenerationCache = new TokenGenerationCache(beans.getBeanProvider(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(tokenGenerationCache, "maxSize", 1000);
+        ReflectionTestUtils.setField(tokenGenerationCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(tokenGenerationCache, "maxStaleSeconds", 3600L);
+        tokenGenerationCache.subscribe();
+
+        jwtUtil = new JwtUtil(tokenStore, tokenGenerationCache);
+        ReflectionTestUtils.setField(jwtUtil, "secret", "test-secret-that-is-at-least-32-bytes-long");
+        ReflectionTestUtils.setField(jwtUtil, "accessTokenExpiration", 60_000L);
+        ReflectionTestUtils.setField(jwtUtil, "refreshTokenExpiration", 600_000L);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "initSigningKey");
+    }
+
+    @Test
+    void anyStoreExceptionCountsAsAFailure() {
+        TokenStateCircuitBreaker breaker = breaker();
+        ParsedToken token = jwtUtil.parseToken(jwtUtil.generateToken(USER));
+        tokenGenerationCache.evict(USERNAME);
+        tokenStore.failing = true;
+
+        assertThat(breaker.lookup(token)).isEmpty();
+        assertThat(breaker.getState()).isEqualTo(TokenStateCircuitBreaker.State.CLOSED);
+        assertThat(breaker.lookup(token)).isEmpty();
+        assertThat(breaker.getState()).isEqualTo(TokenStateCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void openBreakerAnswersFromTheCachedGenerationAndAnAuthoritativeReplica() {
+        beans.addBean("revokedTokenReplica", new FixedReplica());
+        TokenStateCircuitBreaker breaker = breaker();
+        ParsedToken valid = jwtUtil.parseToken(jwtUtil.generateToken(USER));
+        ParsedToken revoked = jwtUtil.parseToken(jwtUtil.generateToken(USER));
+        revokedIds.add(revoked.getId());
+        open(breaker);
+
+        Optional<TokenState> validState = breaker.lookup(valid);
+        Optional<TokenState> revokedState = breaker.lookup(revoked);
+
+        assertThat(breaker.getState()).isEqualTo(TokenStateCircuitBreaker.State.OPEN);
+        assertThat(validState).hasValueSatisfying(state -> assertThat(state.isValid()).isTrue());
+        assertThat(revokedState).hasValueSatisfying(state -> assertThat(state.isBlacklisted()).isTrue());
+    }
+
+    @Test
+    void openBreakerRefusesWhenTheLocalCachesCannotAnswer() {
+        TokenStateCircuitBreaker breaker = breaker();
+        ParsedToken token = jwtUtil.parseToken(jwtUtil.generateToken(USER));
+        open(breaker);
+
+        // No replica to rule out a revocation
+        assertThat(breaker.lookup(token)).isEmpty();
+
+        beans.addBean("revokedTokenReplica", new FixedReplica());
+        tokenGenerationCache.evict(USERNAME);
+        // No cached generation to rule out a logout
+        assertThat(breaker.lookup(token)).isEmpty();
+    }
+
+    private TokenStateCircuitBreaker breaker() {
+        TokenStateCircuitBreaker breaker = new TokenStateCircuitBreaker(jwtUtil, tokenGenerationCache,
+                beans.getBeanProvider(RevokedTokenReplica.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(breaker, "timeoutMs", 150L);
+        ReflectionTestUtils.setField(breaker, "failureThreshold", 2);
+        ReflectionTestUtils.setField(breaker, "openDurationMs", 60_000L);
+        ReflectionTestUtils.setField(breaker, "fallbackPolicy", TokenStateCircuitBreaker.FallbackPolicy.FAIL_CLOSED);
+        ReflectionTestUtils.setField(breaker, "acceptRecentMaxAgeSeconds", 120L);
+        breaker.registerMetrics();
+        return breaker;
+    }
+
+    private void open(TokenStateCircuitBreaker breaker) {
+        ParsedToken other = jwtUtil.parseToken(jwtUtil.generateToken(
+                new CustomUserDetailsImpl(8L, "bob@example.com", true, List.of("USER"))));
+        tokenGenerationCache.evict("bob@example.com");
+        tokenStore.failing = true;
+        breaker.lookup(other);
+        breaker.lookup(other);
+        assertThat(breaker.getState()).isEqualTo(TokenStateCircuitBreaker.State.OPEN);
+    }
+
+    /**
+     * Store whose lookups fail with an exception that is neither a DataAccessException nor a
+     * RedisException.
+     */
+    private static class FailingTokenStore extends InMemoryTokenStore {
+
+        private volatile boolean failing;
+
+        @Override
+        public StoredTokenState loadTokenState(ParsedToken token) {
+            if (failing) {
+                throw new IllegalStateException("store unavailable");
+            }
+            return super.loadTokenState(token);
+        }
+
+        @Override
+        public boolean isBlacklisted(ParsedToken token) {
+            if (failing) {
+                throw new IllegalStateException("store unavailable");
+            }
+            return super.isBlacklisted(token);
+        }
+    }
+
+    private class FixedReplica extends RevokedTokenReplica {
+
+        FixedReplica() {
+            super(null, null);
+        }
+
+        @Override
+        public boolean isAuthoritative() {
+            return true;
+        }
+
+        @Override
+        public boolean isRevoked(ParsedToken token) {
+            return revokedIds.contains(token.getId());
+        }
+    }
+}
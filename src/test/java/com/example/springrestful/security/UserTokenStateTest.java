@@ -0,0 +1,44 @@
+package com.example.springrestful.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserTokenStateTest {
+
+    private static final long MARKED_AT = 1_700_000_000_400L;
+
+    @Test
+    void tokensIssuedRightAfterTheMarkerAreNotStale() {
+        UserTokenState state = new UserTokenState(1, MARKED_AT);
+
+        // iat is truncated to the second, so it reads as earlier than the marker
+        assertThat(state.areClaimsStale(issuedAt(MARKED_AT + 100))).isFalse();
+        assertThat(state.areClaimsStale(issuedAt(MARKED_AT + 1_000))).isFalse();
+    }
+
+    @Test
+    void tokensFromAnEarlierSecondAreStale() {
+        UserTokenState state = new UserTokenState(1, MARKED_AT);
+
+        assertThat(state.areClaimsStale(issuedAt(MARKED_AT - 1_000))).isTrue();
+        assertThat(state.areClaimsStale(issuedAt(MARKED_AT - 60_000))).isTrue();
+    }
+
+    @Test
+    void noMarkerMeansNothingIsStale() {
+        assertThat(new UserTokenState(1, 0).areClaimsStale(issuedAt(MARKED_AT))).isFalse();
+    }
+
+    private static ParsedToken issuedAt(long issuedAtMillis) {
+        Claims claims = Jwts.claims();
+        claims.setSubject("alice");
+        claims.setId("AAAAAAAAAAAAAAAAAAAAAA");
+        claims.setIssuedAt(new Date(issuedAtMillis));
+        return ParsedToken.of("token", claims);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.springrestful.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedExpiringMapTest {
+
+    private static final long LIVE = 60_000;
+    private static final long EXPIRED = -1;
+
+    @Test
+    void expiredEntriesReadAsAbsent() {
+        BoundedExpiringMap<String, String> map = new BoundedExpiringMap<>(10);
+
+        map.put("live", "a", LIVE);
+        map.put("expired", "b", EXPIRED);
+
+        assertThat(map.get("live")).isEqualTo("a");
+        assertThat(map.containsKey("expired")).isFalse();
+        assertThat(map.get("missing")).isNull();
+    }
+
+    @Test
+    void updateKeepsExpiryUnlessReset() {
+        BoundedExpiringMap<String, Long> map = new BoundedExpiringMap<>(10);
+
+        assertThat(map.update("counter", current -> current == null ? 1 : current + 1, LIVE, false)).isEqualTo(1);
+        assertThat(map.update("counter", current -> current + 1, EXPIRED, false)).isEqualTo(2);
+        assertThat(map.get("counter")).isEqualTo(2);
+
+        map.update("counter", current -> current + 1, EXPIRED, true);
+        assertThat(map.get("counter")).isNull();
+    }
+
+    @Test
+    void evictingMapMakesRoomByDroppingLiveEntries() {
+        BoundedExpiringMap<Integer, String> map = new BoundedExpiringMap<>(10);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, "v" + i, LIVE);
+        }
+
+        map.put(10, "v10", LIVE);
+
+        assertThat(map.get(10)).isEqualTo("v10");
+        assertThat(map.size()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    void fullMapPurgesExpiredEntriesBeforeEvictingLiveOnes() {
+        BoundedExpiringMap<Integer, String> map = new BoundedExpiringMap<>(10);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, "v" + i, i == 0 ? EXPIRED : LIVE);
+        }
+
+        map.put(10, "v10", LIVE);
+
+        for (int i = 1; i <= 10; i++) {
+            assertThat(map.get(i)).isEqualTo("v" + i);
+        }
+    }
+
+    @Test
+    void nonEvictingMapRefusesNewKeysWhenFull() {
+        BoundedExpiringMap<Integer, String> map = new BoundedExpiringMap<>(10, false);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, "v" + i, LIVE);
+        }
+
+        assertThatThrownBy(() -> map.put(10, "v10", LIVE)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> map.update(10, current -> "v10", LIVE, true))
+                .isInstanceOf(IllegalStateException.class);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(map.get(i)).isEqualTo("v" + i);
+        }
+        assertThat(map.get(10)).isNull();
+    }
+
+    @Test
+    void nonEvictingMapStillUpdatesExistingKeysWhenFull() {
+        BoundedExpiringMap<Integer, String> map = new BoundedExpiringMap<>(10, false);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, "v" + i, LIVE);
+        }
+
+        map.put(3, "updated", LIVE);
+        map.update(4, current -> current + "!", LIVE, true);
+
+        assertThat(map.get(3)).isEqualTo("updated");
+        assertThat(map.get(4)).isEqualTo("v4!");
+    }
+
+    @Test
+    void nonEvictingMapAcceptsNewKeysOnceEntriesExpire() {
+        BoundedExpiringMap<Integer, String> map = new BoundedExpiringMap<>(10, false);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, "v" + i, i < 2 ? EXPIRED : LIVE);
+        }
+
+        map.put(10, "v10", LIVE);
+
+        assertThat(map.get(10)).isEqualTo("v10");
+        assertThat(map.get(9)).isEqualTo("v9");
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.springrestful.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompiledEmailTemplateTest {
+
+    @Test
+    void substitutesVariablesBetweenStaticFragments() {
+        CompiledEmailTemplate template = CompiledEmailTemplate.compile(
+                "Hello {{name}}, your code is {{code}}.", "{{", "}}");
+
+        assertThat(template.render(Map.of("name", "Ada", "code", "123456")))
+                .isEqualTo("Hello Ada, your code is 123456.");
+    }
+
+    @Test
+    void rendersMissingVariablesAsEmpty() {
+        CompiledEmailTemplate template = CompiledEmailTemplate.compile("[{{a}}|{{b}}]", "{{", "}}");
+
+        assertThat(template.render(Map.of("b", "x"))).isEqualTo("[|x]");
+    }
+
+    @Test
+    void escapesValuesButNotTheTemplate() {
+        CompiledEmailTemplate template = CompiledEmailTemplate.compile(
+                "<a href=\"{{x:link}}\">{{x:org}}</a>{{x:missing}}!", "{{x:", "}}");
+
+        assertThat(template.render(Map.of("link", "a&b", "org", "<O>"), HtmlUtils::htmlEscape))
+                .isEqualTo("<a href=\"a&amp;b\">&lt;O&gt;</a>!");
+    }
+
+    @Test
+    void valuesLookingLikeMarkersAreNotExpandedAgain() {
+        CompiledEmailTemplate template = CompiledEmailTemplate.compile("{{a}} {{b}}", "{{", "}}");
+
+        assertThat(template.render(Map.of("a", "{{b}}", "b", "B"))).isEqualTo("{{b}} B");
+    }
+
+    @Test
+    void keepsTextWithoutVariablesOrWithAnUnclosedMarkerAsIs() {
+        assertThat(CompiledEmailTemplate.compile("plain text", "{{", "}}").render(Map.of()))
+                .isEqualTo("plain text");
+        assertThat(CompiledEmailTemplate.compile("{{a}} and {{b", "{{", "}}").render(Map.of("a", "A", "b", "B")))
+                .isEqualTo("A and {{b");
+    }
+
+    @Test
+    void handlesVariablesAtBothEndsAndNextToEachOther() {
+        CompiledEmailTemplate template = CompiledEmailTemplate.compile("{{a}}{{b}}-{{a}}", "{{", "}}");
+
+        assertThat(template.render(Map.of("a", "1", "b", "2"))).isEqualTo("12-1");
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.springrestful.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpiringLongHashSetTest {
+
+    private static final long NOW = 1_000_000L;
+
+    @Test
+    void containsLiveValuesOnly() {
+        ExpiringLongHashSet set = new ExpiringLongHashSet(16, false);
+
+        set.add(42L, NOW + 100, NOW);
+
+        assertThat(set.contains(42L, NOW)).isTrue();
+        assertThat(set.contains(42L, NOW + 100)).isFalse();
+        assertThat(set.contains(43L, NOW)).isFalse();
+    }
+
+    @Test
+    void addExtendsButNeverShortensExpiry() {
+        ExpiringLongHashSet set = new ExpiringLongHashSet(16, false);
+
+        set.add(42L, NOW + 100, NOW);
+        set.add(42L, NOW + 50, NOW);
+        assertThat(set.contains(42L, NOW + 75)).isTrue();
+
+        set.add(42L, NOW + 200, NOW);
+        assertThat(set.contains(42L, NOW + 150)).isTrue();
+    }
+
+    @Test
+    void growsAndKeepsAllValues() {
+        ExpiringLongHashSet set = new ExpiringLongHashSet(4, true);
+
+        for (long value = 1; value <= 1000; value++) {
+            assertThat(set.add(value, NOW + 100, NOW)).isTrue();
+        }
+
+        assertThat(set.capacity()).isGreaterThanOrEqualTo(2000);
+        assertThat(set.size(NOW)).isEqualTo(1000);
+        for (long value = 1; value <= 1000; value++) {
+            assertThat(set.contains(value, NOW)).isTrue();
+        }
+    }
+
+    @Test
+    void refusesNewValuesOnceFullAtMaxCapacity() {
+        ExpiringLongHashSet set = new ExpiringLongHashSet(4, false, 64);
+
+        for (long value = 1; value <= 32; value++) {
+            assertThat(set.add(value, NOW + 100, NOW)).isTrue();
+        }
+
+        assertThat(set.capacity()).isEqualTo(64);
+        assertThat(set.add(33L, NOW + 100, NOW)).isFalse();
+        assertThat(set.contains(33L, NOW)).isFalse();
+        // Live values can still be extended
+        assertThat(set.add(1L, NOW + 500, NOW)).isTrue();
+        assertThat(set.contains(1L, NOW + 400)).isTrue();
+    }
+
+    @Test
+    void purgeExpiredMakesRoomAgainAtMaxCapacity() {
+        ExpiringLongHashSet set = new ExpiringLongHashSet(4, false, 64);
+        for (long value = 1; value <= 32; value++) {
+            set.add(value, value <= 16 ? NOW + 10 : NOW + 100, NOW);
+        }
+        assertThat(set.add(33L, NOW + 100, NOW + 20)).isFalse();
+
+        set.purgeExpired(NOW + 20);
+
+        assertThat(set.size(NOW + 20)).isEqualTo(16);
+        assertThat(set.add(33L, NOW + 100, NOW + 20)).isTrue();
+        assertThat(set.contains(33L, NOW + 20)).isTrue();
+        assertThat(set.contains(1L, NOW + 20)).isFalse();
+        assertThat(set.contains(32L, NOW + 20)).isTrue();
+    }
+
+    @Test
+    void ignoresEmptyAndExpiredValues() {
+        ExpiringLongHashSet set = new ExpiringLongHashSet(16, false);
+
+        set.add(0L, NOW + 100, NOW);
+        set.add(7L, NOW, NOW);
+
+        assertThat(set.contains(0L, NOW)).isFalse();
+        assertThat(set.contains(7L, NOW)).isFalse();
+        assertThat(set.size(NOW)).isZero();
+    }
+}